@@ -2,12 +2,37 @@ package com.epam.carbot;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
 
 @SpringBootApplication
 public class CarbotApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(CarbotApplication.class, args);
+		SpringApplication application = new SpringApplication(CarbotApplication.class);
+		application.addListeners((ApplicationListener<ApplicationEnvironmentPreparedEvent>) event ->
+				configureHttpClientPool(event.getEnvironment()));
+		application.run(args);
+	}
+
+	/**
+	 * The JDK HttpClient connection pool is configured only by system properties, read once when
+	 * the first client is created, so they are set before any bean exists. Values given as JVM
+	 * options take precedence.
+	 */
+	private static void configureHttpClientPool(Environment environment) {
+		setIfAbsent("jdk.httpclient.connectionPoolSize", environment.getProperty("llm.http.pool-size", "32"));
+		Duration keepAlive = environment.getProperty("llm.http.keep-alive", Duration.class, Duration.ofSeconds(60));
+		setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+	}
+
+	private static void setIfAbsent(String property, String value) {
+		if (System.getProperty(property) == null) {
+			System.setProperty(property, value);
+		}
 	}
 
 }
@@ -1,20 +1,84 @@
 package com.epam.carbot.config;
 
+import com.epam.carbot.service.llm.LlmBackendPool;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Configuration
-public class Config {
+public class Config implements DisposableBean {
 
     @Value("${llm.url}")
-    private String llmUrl;
+    private List<String> llmUrls;
+
+    @Value("${llm.backend.failure-threshold:3}")
+    private int backendFailureThreshold;
+
+    @Value("${llm.backend.probe-interval:5s}")
+    private Duration backendProbeInterval;
+
+    @Value("${llm.backend.health-path:/health}")
+    private String backendHealthPath;
+
+    @Value("${llm.http.version:HTTP_1_1}")
+    private HttpClient.Version httpVersion;
+
+    @Value("${llm.http.connect-timeout:3s}")
+    private Duration connectTimeout;
+
+    @Value("${llm.http.read-timeout:90s}")
+    private Duration readTimeout;
+
+    @Value("${llm.http.gzip-requests:false}")
+    private boolean gzipRequests;
+
+    @Value("${llm.http.gzip-min-size:1024}")
+    private int gzipMinSize;
 
+    // не бином: бин-Executor отключил бы applicationTaskExecutor Spring Boot; закрывается в destroy()
+    private final ExecutorService llmHttpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // размер пула и keep-alive задаются системными свойствами в CarbotApplication.main
     @Bean
-    public RestClient llmRestClient() {
-        return RestClient.builder()
-                .baseUrl(llmUrl)
+    public HttpClient llmHttpClient() {
+        return HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(connectTimeout)
+                .executor(llmHttpExecutor)
                 .build();
     }
+
+    @Bean
+    public LlmBackendPool llmBackendPool(HttpClient llmHttpClient) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(llmHttpClient);
+        requestFactory.setReadTimeout(readTimeout);
+
+        RestClient.Builder builder = RestClient.builder()
+                .requestFactory(requestFactory);
+        if (gzipRequests) {
+            builder.requestInterceptor(new GzipRequestInterceptor(gzipMinSize));
+        }
+
+        List<LlmBackendPool.Backend> backends = llmUrls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new LlmBackendPool.Backend(url, builder.clone().baseUrl(url).build()))
+                .toList();
+        return new LlmBackendPool(backends, backendFailureThreshold, backendProbeInterval, backendHealthPath);
+    }
+
+    @Override
+    public void destroy() {
+        // HttpClient как бин к этому моменту уже закрыт; зависшие запросы не ждём
+        llmHttpExecutor.shutdownNow();
+    }
 }
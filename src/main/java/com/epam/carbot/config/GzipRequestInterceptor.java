@@ -0,0 +1,39 @@
+package com.epam.carbot.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips request bodies above {@code minSize} bytes. The prompt repeats the whole system
+ * prompt and history on every turn, so it compresses well.
+ */
+class GzipRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    private final int minSize;
+
+    GzipRequestInterceptor(int minSize) {
+        this.minSize = minSize;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (body.length < minSize || request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING) != null) {
+            return execution.execute(request, body);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+
+        request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return execution.execute(request, compressed.toByteArray());
+    }
+}
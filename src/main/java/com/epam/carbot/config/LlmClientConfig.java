@@ -0,0 +1,161 @@
+package com.epam.carbot.config;
+
+import com.epam.carbot.service.llm.AdaptiveLimitLlmClient;
+import com.epam.carbot.service.llm.BatchingLlmClient;
+import com.epam.carbot.service.llm.CachingLlmClient;
+import com.epam.carbot.service.llm.LlmAdmissionQueue;
+import com.epam.carbot.service.llm.LlmClient;
+import com.epam.carbot.service.llm.PlaywrightLlmClient;
+import com.epam.carbot.service.llm.ResilientLlmClient;
+import com.epam.carbot.service.llm.SingleFlightLlmClient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assembles the {@link LlmClient} used by the bot: the sidecar transport wrapped
+ * by the optional layers enabled in properties, outermost first. Each layer's counters are
+ * registered as meters here, and layers owning threads are closed here on shutdown, since
+ * the layers themselves are not beans.
+ */
+@Configuration
+public class LlmClientConfig implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmClientConfig.class);
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    @Value("${llm.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    @Value("${llm.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${llm.cache.max-size:1000}")
+    private int cacheMaxSize;
+
+    @Value("${llm.cache.ttl:10m}")
+    private Duration cacheTtl;
+
+    @Value("${llm.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${llm.batch.window:20ms}")
+    private Duration batchWindow;
+
+    @Value("${llm.batch.max-size:8}")
+    private int batchMaxSize;
+
+    @Value("${llm.limiter.enabled:true}")
+    private boolean limiterEnabled;
+
+    @Value("${llm.limiter.initial-limit:4}")
+    private int limiterInitialLimit;
+
+    @Value("${llm.limiter.min-limit:1}")
+    private int limiterMinLimit;
+
+    @Value("${llm.limiter.max-limit:32}")
+    private int limiterMaxLimit;
+
+    @Value("${llm.limiter.backoff-ratio:0.75}")
+    private double limiterBackoffRatio;
+
+    @Value("${llm.limiter.latency-tolerance:2.0}")
+    private double limiterLatencyTolerance;
+
+    @Value("${llm.retry.enabled:true}")
+    private boolean retryEnabled;
+
+    @Value("${llm.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${llm.retry.base-backoff:200ms}")
+    private Duration retryBaseBackoff;
+
+    @Value("${llm.retry.max-backoff:2s}")
+    private Duration retryMaxBackoff;
+
+    @Value("${llm.retry.budget-ratio:0.2}")
+    private double retryBudgetRatio;
+
+    @Value("${llm.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${llm.hedge.min-samples:32}")
+    private int hedgeMinSamples;
+
+    @Bean
+    @Primary
+    public LlmClient llmClient(PlaywrightLlmClient transport, LlmAdmissionQueue admissionQueue, MeterRegistry registry) {
+        LlmClient client = transport;
+        if (batchEnabled) {
+            // сразу над транспортом: слои выше не умеют generateBatch и разобрали бы пачку обратно
+            BatchingLlmClient batching = new BatchingLlmClient(client, batchWindow, batchMaxSize);
+            FunctionCounter.builder("carbot.llm.batch.batches", batching, BatchingLlmClient::batchCount).register(registry);
+            FunctionCounter.builder("carbot.llm.batch.requests", batching, BatchingLlmClient::batchedRequestCount).register(registry);
+            Gauge.builder("carbot.llm.batch.waiting", batching, BatchingLlmClient::waitingCount).register(registry);
+            closeables.add(batching);
+            client = batching;
+        }
+        if (limiterEnabled) {
+            AdaptiveLimitLlmClient limiter = new AdaptiveLimitLlmClient(client, limiterInitialLimit, limiterMinLimit, limiterMaxLimit,
+                    limiterBackoffRatio, limiterLatencyTolerance);
+            Gauge.builder("carbot.llm.limiter.limit", limiter, AdaptiveLimitLlmClient::limit).register(registry);
+            Gauge.builder("carbot.llm.limiter.in.flight", limiter, AdaptiveLimitLlmClient::inFlightCount).register(registry);
+            FunctionCounter.builder("carbot.llm.limiter.shed", limiter, AdaptiveLimitLlmClient::shedCount).register(registry);
+            // очередь впускает столько, сколько сейчас разрешает лимитер: лишние ждут, а не получают отказ
+            admissionQueue.limitBy(limiter::limit);
+            client = limiter;
+        }
+        if (retryEnabled || hedgeEnabled) {
+            ResilientLlmClient resilient = new ResilientLlmClient(client, retryEnabled ? retryMaxAttempts : 1, retryBaseBackoff, retryMaxBackoff,
+                    retryBudgetRatio, hedgeEnabled, hedgeMinSamples);
+            FunctionCounter.builder("carbot.llm.retries", resilient, ResilientLlmClient::retryCount).register(registry);
+            FunctionCounter.builder("carbot.llm.retry.budget.exhausted", resilient, ResilientLlmClient::budgetExhaustedCount).register(registry);
+            FunctionCounter.builder("carbot.llm.hedges", resilient, ResilientLlmClient::hedgeCount).register(registry);
+            FunctionCounter.builder("carbot.llm.hedge.wins", resilient, ResilientLlmClient::hedgeWinCount).register(registry);
+            closeables.add(resilient);
+            client = resilient;
+        }
+        if (singleFlightEnabled) {
+            SingleFlightLlmClient singleFlight = new SingleFlightLlmClient(client);
+            FunctionCounter.builder("carbot.llm.single.flight.collapsed", singleFlight, SingleFlightLlmClient::collapsedCount).register(registry);
+            Gauge.builder("carbot.llm.single.flight.in.flight", singleFlight, SingleFlightLlmClient::inFlightCount).register(registry);
+            client = singleFlight;
+        }
+        if (cacheEnabled) {
+            CachingLlmClient caching = new CachingLlmClient(client, cacheMaxSize, cacheTtl);
+            FunctionCounter.builder("carbot.llm.cache.requests", caching, CachingLlmClient::hitCount).tag("result", "hit").register(registry);
+            FunctionCounter.builder("carbot.llm.cache.requests", caching, CachingLlmClient::missCount).tag("result", "miss").register(registry);
+            FunctionCounter.builder("carbot.llm.cache.evictions", caching, CachingLlmClient::evictionCount).register(registry);
+            Gauge.builder("carbot.llm.cache.size", caching, CachingLlmClient::size).register(registry);
+            client = caching;
+        }
+        return client;
+    }
+
+    @Override
+    public void destroy() {
+        // снаружи внутрь, как и шли вызовы
+        for (int i = closeables.size() - 1; i >= 0; i--) {
+            try {
+                closeables.get(i).close();
+            } catch (Exception e) {
+                logger.warn("failed to close LLM client layer {}", closeables.get(i).getClass().getSimpleName(), e);
+            }
+        }
+        closeables.clear();
+    }
+}
@@ -0,0 +1,74 @@
+package com.epam.carbot.config;
+
+import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.TurnExecutor;
+import com.epam.carbot.service.llm.LlmAdmissionQueue;
+import com.epam.carbot.service.memory.ConversationCompactor;
+import com.epam.carbot.service.memory.InMemoryMemoryStore;
+import com.epam.carbot.service.memory.JdbcMemoryStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the counters the chat beans already keep as Micrometer meters; they are read
+ * on scrape, nothing extra happens on the request path. Per-turn meters live in the bot
+ * service, LLM layer meters in {@link LlmClientConfig}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder sessionMetrics(ChatSessionService sessions) {
+        return registry -> {
+            Gauge.builder("carbot.sessions.active", sessions, ChatSessionService::activeSessionCount).register(registry);
+            // сумма по всем сессиям, считается обходом при каждом съёме
+            Gauge.builder("carbot.history.messages", sessions, ChatSessionService::historyMessageCount).register(registry);
+            FunctionCounter.builder("carbot.sessions.evicted", sessions, ChatSessionService::evictedSessionCount).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder turnExecutorMetrics(TurnExecutor executor) {
+        return registry -> {
+            Gauge.builder("carbot.turns.active", executor, TurnExecutor::activeCount).register(registry);
+            Gauge.builder("carbot.turns.queued", executor, TurnExecutor::queuedCount).register(registry);
+            Gauge.builder("carbot.turns.serialized.keys", executor, TurnExecutor::serializedKeyCount).register(registry);
+            FunctionCounter.builder("carbot.turns.rejected", executor, TurnExecutor::rejectedCount).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder admissionMetrics(LlmAdmissionQueue queue) {
+        return registry -> {
+            Gauge.builder("carbot.llm.admission.waiting", queue, LlmAdmissionQueue::waitingCount).register(registry);
+            FunctionCounter.builder("carbot.llm.admission.admitted", queue, LlmAdmissionQueue::admittedCount).register(registry);
+            FunctionCounter.builder("carbot.llm.admission.rejected", queue, LlmAdmissionQueue::rejectedCount).register(registry);
+            FunctionCounter.builder("carbot.llm.admission.timed.out", queue, LlmAdmissionQueue::timedOutCount).register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder memoryMetrics(
+            ObjectProvider<InMemoryMemoryStore> inMemoryStore,
+            ObjectProvider<JdbcMemoryStore> jdbcStore,
+            ConversationCompactor compactor
+    ) {
+        return registry -> {
+            // бин есть только у выбранного memory.store
+            inMemoryStore.ifAvailable(store -> {
+                Gauge.builder("carbot.memory.entries", store, InMemoryMemoryStore::size).register(registry);
+                FunctionCounter.builder("carbot.memory.expired", store, InMemoryMemoryStore::expiredCount).register(registry);
+                FunctionCounter.builder("carbot.memory.evicted", store, InMemoryMemoryStore::evictedCount).register(registry);
+            });
+            jdbcStore.ifAvailable(store -> {
+                Gauge.builder("carbot.memory.entries", store, JdbcMemoryStore::cachedCount).register(registry);
+                Gauge.builder("carbot.memory.pending.writes", store, JdbcMemoryStore::pendingWriteCount).register(registry);
+            });
+            FunctionCounter.builder("carbot.memory.digest.folded", compactor, ConversationCompactor::foldedMessageCount).register(registry);
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.epam.carbot.config;
+
+import com.epam.carbot.service.ChatSessionService;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops chat history as soon as the last Vaadin session using it ends instead of waiting for the idle sweep.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.session.evict-on-session-destroy", havingValue = "true", matchIfMissing = true)
+public class SessionCleanupListener implements VaadinServiceInitListener {
+
+    private final ChatSessionService sessions;
+
+    public SessionCleanupListener(ChatSessionService sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.getSource().addSessionDestroyListener(e -> sessions.release(e.getSession()));
+    }
+}
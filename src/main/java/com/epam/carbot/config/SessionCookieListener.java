@@ -0,0 +1,29 @@
+package com.epam.carbot.config;
+
+import com.epam.carbot.service.ChatSessionService;
+import com.vaadin.flow.server.ServiceInitEvent;
+import com.vaadin.flow.server.VaadinServiceInitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets the {@code carbot_sid} cookie on the first request of a Vaadin session, while the
+ * response is still a plain HTTP one.
+ */
+@Component
+public class SessionCookieListener implements VaadinServiceInitListener {
+
+    private final ChatSessionService sessions;
+
+    public SessionCookieListener(ChatSessionService sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public void serviceInit(ServiceInitEvent event) {
+        event.addRequestHandler((session, request, response) -> {
+            sessions.bindSessionId(session, request, response);
+            // запрос обрабатывается дальше как обычно
+            return false;
+        });
+    }
+}
@@ -1,4 +1,9 @@
 package com.epam.carbot.domain;
 
-public record BotAnswer(String reply, Memory memory) {
+import com.fasterxml.jackson.annotation.JsonAlias;
+
+/**
+ * Aliases are the short keys of the delta answer contract.
+ */
+public record BotAnswer(@JsonAlias("r") String reply, @JsonAlias("m") Memory memory) {
 }
@@ -1,10 +1,30 @@
 package com.epam.carbot.domain;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Short aliases ({@code b}, {@code c}, {@code p}, {@code t}, {@code s}) are the keys of the
+ * delta answer contract, where the model sends only the fields it changed.
+ *
+ * @param digest short extract of turns that no longer fit into the prompt history window;
+ *               maintained by the server, never shown to or taken from the model as part of memory
+ */
+@JsonPropertyOrder({"budget", "country", "purpose", "body_type", "summary"})
 public record Memory(
-        String budget,
-        String country,
-        String purpose,
-        String body_type,
-        String summary
+        @JsonAlias("b") String budget,
+        @JsonAlias("c") String country,
+        @JsonAlias("p") String purpose,
+        @JsonAlias("t") String body_type,
+        @JsonAlias("s") String summary,
+        @JsonIgnore String digest
 ) {
+    public Memory(String budget, String country, String purpose, String body_type, String summary) {
+        this(budget, country, purpose, body_type, summary, null);
+    }
+
+    public Memory withDigest(String digest) {
+        return new Memory(budget, country, purpose, body_type, summary, digest);
+    }
 }
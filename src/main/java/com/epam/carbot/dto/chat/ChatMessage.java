@@ -2,9 +2,37 @@ package com.epam.carbot.dto.chat;
 
 import java.time.Instant;
 
+/**
+ * @param tokens rough token count of {@code text}, computed once when the message is created
+ */
 public record ChatMessage(
         String author,
         String text,
         Instant at,
-        boolean fromUser
-) {}
\ No newline at end of file
+        boolean fromUser,
+        int tokens
+) {
+    public ChatMessage(String author, String text, Instant at, boolean fromUser) {
+        this(author, text, at, fromUser, estimateTokens(text));
+    }
+
+    /**
+     * Tokenizers of the models behind the sidecar give roughly 4 Latin or 2.5 Cyrillic
+     * characters per token; close enough to budget a prompt without calling a tokenizer.
+     */
+    public static int estimateTokens(CharSequence text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (int) Math.ceil(ascii / 4.0 + other / 2.5);
+    }
+}
@@ -0,0 +1,8 @@
+package com.epam.carbot.dto.generate;
+
+import java.util.List;
+
+public record GenerateBatchRequest(
+        List<GenerateRequest> requests
+) {
+}
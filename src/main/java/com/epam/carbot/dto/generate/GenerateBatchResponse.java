@@ -0,0 +1,11 @@
+package com.epam.carbot.dto.generate;
+
+import java.util.List;
+
+/**
+ * Responses in the same order as {@link GenerateBatchRequest#requests()}.
+ */
+public record GenerateBatchResponse(
+        List<GenerateResponse> responses
+) {
+}
@@ -0,0 +1,12 @@
+package com.epam.carbot.dto.generate;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record GenerateChunk(
+        String delta,
+        Boolean done,
+        Boolean ok,
+        @JsonProperty("chat_mode_used") String chatModeUsed,
+        @JsonProperty("chat_url") String chatUrl
+) {
+}
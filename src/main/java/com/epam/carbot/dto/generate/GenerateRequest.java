@@ -1,10 +1,25 @@
 package com.epam.carbot.dto.generate;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * @param backend  sidecar that owns {@code chatUrl}; the call is routed only there. Not sent to the sidecar.
+ * @param cacheKey dialog state that decides the answer, see {@code PromptBuilder#stateKey}; the response
+ *                 cache keys on it instead of the whole prompt. Not sent to the sidecar.
+ */
 public record GenerateRequest(
         String prompt,
         @JsonProperty("chat_mode") String chatMode,
-        @JsonProperty("chat_url") String chatUrl
+        @JsonProperty("chat_url") String chatUrl,
+        @JsonIgnore String backend,
+        @JsonIgnore String cacheKey
 ) {
+    public GenerateRequest(String prompt, String chatMode, String chatUrl) {
+        this(prompt, chatMode, chatUrl, null, null);
+    }
+
+    public GenerateRequest(String prompt, String chatMode, String chatUrl, String backend) {
+        this(prompt, chatMode, chatUrl, backend, null);
+    }
 }
@@ -1,11 +1,23 @@
 package com.epam.carbot.dto.generate;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * @param backend sidecar that produced the answer, filled in by the client; a continued chat must go back to it
+ */
 public record GenerateResponse(
         Boolean ok,
         String text,
         @JsonProperty("chat_mode_used") String chatModeUsed,
-        @JsonProperty("chat_url") String chatUrl
+        @JsonProperty("chat_url") String chatUrl,
+        @JsonIgnore String backend
 ) {
+    public GenerateResponse(Boolean ok, String text, String chatModeUsed, String chatUrl) {
+        this(ok, text, chatModeUsed, chatUrl, null);
+    }
+
+    public GenerateResponse withBackend(String backend) {
+        return new GenerateResponse(ok, text, chatModeUsed, chatUrl, backend);
+    }
 }
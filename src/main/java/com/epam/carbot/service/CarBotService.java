@@ -4,9 +4,12 @@ import com.epam.carbot.domain.BotReply;
 import com.epam.carbot.dto.chat.ChatMessage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface CarBotService {
 
     BotReply reply(String sessionId, String username, String userText, List<ChatMessage> recentHistory, String pendingField);
 
+    CompletableFuture<BotReply> replyAsync(String sessionId, String username, String userText, List<ChatMessage> recentHistory, String pendingField, ReplyListener listener);
+
 }
@@ -0,0 +1,92 @@
+package com.epam.carbot.service;
+
+import com.epam.carbot.dto.chat.ChatMessage;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of the latest messages of one session. Appends are serialized; readers
+ * take {@link #tail(int)} without locking and get a view over the ring rather than a copy.
+ * The view is pinned to the sequence numbers it was taken at, so later appends don't shift it,
+ * and reading a slot that has since been overwritten fails instead of returning a newer message.
+ */
+public final class ChatHistory {
+
+    private final AtomicReferenceArray<ChatMessage> ring;
+    private final int capacity;
+
+    // сколько сообщений записано за всё время; запись в слот видна читателю после sequence
+    private volatile long sequence;
+    // выставляется до записи в слот, чтобы читатель заметил перезапись
+    private volatile long reserved;
+
+    public ChatHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    public synchronized void append(ChatMessage message) {
+        long next = sequence;
+        reserved = next + 1;
+        ring.set((int) (next % capacity), message);
+        sequence = next + 1;
+    }
+
+    /** Total number of messages ever appended, including those already dropped from the ring. */
+    public long sequence() {
+        return sequence;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return (int) Math.min(sequence, capacity);
+    }
+
+    public List<ChatMessage> tail(int maxMessages) {
+        long end = sequence;
+        int count = (int) Math.min(Math.min(end, capacity), Math.max(0, maxMessages));
+        return count == 0 ? List.of() : new TailView(end - count, count);
+    }
+
+    /** Messages numbered from {@code fromSequence} (inclusive) to {@code toSequence} (exclusive) that the ring still holds. */
+    public List<ChatMessage> range(long fromSequence, long toSequence) {
+        long end = sequence;
+        long to = Math.min(toSequence, end);
+        long from = Math.max(fromSequence, end - capacity);
+        return from >= to ? List.of() : new TailView(from, (int) (to - from));
+    }
+
+    private final class TailView extends AbstractList<ChatMessage> {
+        private final long start;
+        private final int count;
+
+        private TailView(long start, int count) {
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            long seq = start + index;
+            ChatMessage message = ring.get((int) (seq % capacity));
+            if (reserved - capacity > seq) {
+                throw new ConcurrentModificationException("History slot " + seq + " was overwritten");
+            }
+            return message;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
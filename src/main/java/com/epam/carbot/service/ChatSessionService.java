@@ -1,29 +1,149 @@
 package com.epam.carbot.service;
 import com.epam.carbot.dto.chat.ChatMessage;
+import com.vaadin.flow.server.VaadinRequest;
+import com.vaadin.flow.server.VaadinResponse;
+import com.vaadin.flow.server.VaadinService;
 import com.vaadin.flow.server.VaadinSession;
+import jakarta.servlet.http.Cookie;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
-public class ChatSessionService {
+public class ChatSessionService implements DisposableBean {
 
-    // sessionId -> history
-    private final Map<String, List<ChatMessage>> history = new ConcurrentHashMap<>();
-    private final Map<String, DialogState> dialogState = new ConcurrentHashMap<>();
+    private static final String SESSION_COOKIE = "carbot_sid";
+    private static final String SESSION_ATTRIBUTE = "chatSessionId";
+    private static final Duration SESSION_COOKIE_MAX_AGE = Duration.ofDays(30);
+
+    // sessionId -> history + dialog state
+    private final Map<String, SessionState> states = new ConcurrentHashMap<>();
+    // sessionId -> сколько Vaadin-сессий на него ссылается: один cookie может жить в нескольких
+    private final Map<String, Integer> boundSessions = new ConcurrentHashMap<>();
+
+    private final int historyCapacity;
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong evicted = new AtomicLong();
+
+    public ChatSessionService(
+            @Value("${chat.history.capacity:100}") int historyCapacity,
+            @Value("${chat.session.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${chat.session.sweep-interval:1m}") Duration sweepInterval
+    ) {
+        this.historyCapacity = Math.max(1, historyCapacity);
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("chat-session-sweeper").daemon().factory());
+        long interval = Math.max(1, sweepInterval.toMillis());
+        sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
     public String sessionId() {
         var s = VaadinSession.getCurrent();
-        String id = (String) s.getAttribute("chatSessionId");
+        String id = (String) s.getAttribute(SESSION_ATTRIBUTE);
         if (id == null) {
-            id = UUID.randomUUID().toString();
-            s.setAttribute("chatSessionId", id);
+            // обычно id уже привязан в bindSessionId; сюда попадаем, только если обработчик запросов не сработал
+            id = sessionIdFromCookie(VaadinService.getCurrentRequest());
+            if (id == null) {
+                id = UUID.randomUUID().toString();
+                rememberSessionId(VaadinService.getCurrentResponse(), id);
+            }
+            bind(s, id);
         }
         return id;
     }
 
+    /**
+     * Binds the Vaadin session to the id from the {@code carbot_sid} cookie, issuing the cookie
+     * if there is none. Runs on the plain HTTP request that opens the session: later UI traffic
+     * may go over the push channel, whose response cannot carry a cookie.
+     */
+    public void bindSessionId(VaadinSession session, VaadinRequest request, VaadinResponse response) {
+        if (session == null) {
+            return;
+        }
+        session.lock();
+        try {
+            if (session.getAttribute(SESSION_ATTRIBUTE) != null) {
+                return;
+            }
+            String id = sessionIdFromCookie(request);
+            if (id == null) {
+                id = UUID.randomUUID().toString();
+                rememberSessionId(response, id);
+            }
+            bind(session, id);
+        } finally {
+            session.unlock();
+        }
+    }
+
+    /**
+     * Called when a Vaadin session ends. The chat state is dropped only with the last Vaadin
+     * session bound to its id; another browser session may still use it through the cookie.
+     */
+    public void release(VaadinSession session) {
+        String id = (String) session.getAttribute(SESSION_ATTRIBUTE);
+        if (id == null) {
+            return;
+        }
+        boundSessions.computeIfPresent(id, (key, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            evict(key);
+            return null;
+        });
+    }
+
+    private void bind(VaadinSession session, String id) {
+        session.setAttribute(SESSION_ATTRIBUTE, id);
+        boundSessions.merge(id, 1, Integer::sum);
+    }
+
+    // id живёт в cookie, чтобы сохранённая память находилась и после перезапуска
+    private static String sessionIdFromCookie(VaadinRequest request) {
+        if (request == null || request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (SESSION_COOKIE.equals(cookie.getName()) && isUuid(cookie.getValue())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static void rememberSessionId(VaadinResponse response, String id) {
+        if (response == null) {
+            return;
+        }
+        Cookie cookie = new Cookie(SESSION_COOKIE, id);
+        cookie.setHttpOnly(true);
+        cookie.setPath("/");
+        cookie.setMaxAge((int) SESSION_COOKIE_MAX_AGE.toSeconds());
+        response.addCookie(cookie);
+    }
+
+    private static boolean isUuid(String value) {
+        try {
+            UUID.fromString(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     public String username() {
         return (String) VaadinSession.getCurrent().getAttribute("username");
     }
@@ -32,47 +152,136 @@ public class ChatSessionService {
         VaadinSession.getCurrent().setAttribute("username", name);
     }
 
+    /** Everything the ring still holds for the session, oldest first; a copy, later messages do not affect it. */
     public List<ChatMessage> getHistory(String sessionId) {
-        return history.computeIfAbsent(sessionId, key -> new ArrayList<>());
+        return List.copyOf(state(sessionId).history.tail(historyCapacity));
     }
 
     public List<ChatMessage> getRecentHistory(String sessionId, int maxMessages) {
-        List<ChatMessage> all = getHistory(sessionId);
-        if (all.isEmpty()) {
-            return List.of();
-        }
+        // копия: окно живёт дольше хода, а кольцо за это время может перезаписать слоты
+        return List.copyOf(state(sessionId).history.tail(Math.max(1, maxMessages)));
+    }
+
+    /** Number of messages ever added to the session; grows by one per message. */
+    public long historySequence(String sessionId) {
+        return state(sessionId).history.sequence();
+    }
+
+    /** Messages numbered {@code [fromSequence, toSequence)}, as far as the history still holds them. */
+    public List<ChatMessage> getHistoryRange(String sessionId, long fromSequence, long toSequence) {
+        return state(sessionId).history.range(fromSequence, toSequence);
+    }
+
+    /** Messages before this sequence number are already folded into the memory digest. */
+    public long digestedSequence(String sessionId) {
+        return state(sessionId).digestedSequence;
+    }
 
-        int safeLimit = Math.max(1, maxMessages);
-        int fromIndex = Math.max(0, all.size() - safeLimit);
-        return new ArrayList<>(all.subList(fromIndex, all.size()));
+    public void setDigestedSequence(String sessionId, long sequence) {
+        state(sessionId).digestedSequence = sequence;
     }
 
     public String pendingField(String sessionId) {
-        return dialogState.computeIfAbsent(sessionId, key -> new DialogState(null, null)).pendingField();
+        return state(sessionId).dialog.get().pendingField();
     }
 
     public void setPendingField(String sessionId, String pendingField) {
-        dialogState.compute(sessionId, (key, existing) -> {
-            DialogState current = existing == null ? new DialogState(null, null) : existing;
-            return new DialogState(pendingField, current.lastBotAction());
-        });
+        state(sessionId).dialog.updateAndGet(current ->
+                new DialogState(pendingField, current.lastBotAction(), current.chatUrl(), current.chatBackend()));
     }
 
     public void setLastBotAction(String sessionId, String action) {
-        dialogState.compute(sessionId, (key, existing) -> {
-            DialogState current = existing == null ? new DialogState(null, null) : existing;
-            return new DialogState(current.pendingField(), action);
-        });
+        state(sessionId).dialog.updateAndGet(current ->
+                new DialogState(current.pendingField(), action, current.chatUrl(), current.chatBackend()));
+    }
+
+    public String chatUrl(String sessionId) {
+        SessionState state = states.get(sessionId);
+        return state == null ? null : state.dialog.get().chatUrl();
+    }
+
+    /** Sidecar that owns the session's chat; continued turns are sent only there. */
+    public String chatBackend(String sessionId) {
+        SessionState state = states.get(sessionId);
+        return state == null ? null : state.dialog.get().chatBackend();
+    }
+
+    public void setChatUrl(String sessionId, String chatUrl, String chatBackend) {
+        state(sessionId).dialog.updateAndGet(current ->
+                new DialogState(current.pendingField(), current.lastBotAction(), chatUrl, chatBackend));
     }
 
     public void addUserMessage(String sessionId, String username, String text) {
-        getHistory(sessionId).add(new ChatMessage(username, text, Instant.now(), true));
+        state(sessionId).history.append(new ChatMessage(username, text, Instant.now(), true));
     }
 
     public void addBotMessage(String sessionId, String text) {
-        getHistory(sessionId).add(new ChatMessage("AutoBot", text, Instant.now(), false));
+        state(sessionId).history.append(new ChatMessage("AutoBot", text, Instant.now(), false));
+    }
+
+    /** Marks the session as in use, so the idle sweep keeps it while its tab is open. */
+    public void touch(String sessionId) {
+        SessionState state = states.get(sessionId);
+        if (state != null) {
+            state.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /** Drops the session's history and dialog state; memory in {@code MemoryStore} is kept. */
+    public void evict(String sessionId) {
+        if (sessionId != null && states.remove(sessionId) != null) {
+            evicted.incrementAndGet();
+        }
+    }
+
+    public int activeSessionCount() {
+        return states.size();
+    }
+
+    public long historyMessageCount() {
+        long total = 0;
+        for (SessionState state : states.values()) {
+            total += state.history.size();
+        }
+        return total;
+    }
+
+    public long evictedSessionCount() {
+        return evicted.get();
+    }
+
+    void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleTimeoutMillis;
+        states.forEach((sessionId, state) -> {
+            if (state.lastSeen < idleSince && states.remove(sessionId, state)) {
+                evicted.incrementAndGet();
+            }
+        });
+    }
+
+    private SessionState state(String sessionId) {
+        SessionState state = states.computeIfAbsent(sessionId, key -> new SessionState(historyCapacity));
+        state.lastSeen = System.currentTimeMillis();
+        return state;
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    private static final class SessionState {
+        private final ChatHistory history;
+        private final AtomicReference<DialogState> dialog = new AtomicReference<>(DialogState.EMPTY);
+        private volatile long lastSeen;
+        private volatile long digestedSequence;
+
+        private SessionState(int historyCapacity) {
+            this.history = new ChatHistory(historyCapacity);
+        }
     }
 
-    private record DialogState(String pendingField, String lastBotAction) {
+    private record DialogState(String pendingField, String lastBotAction, String chatUrl, String chatBackend) {
+        private static final DialogState EMPTY = new DialogState(null, null, null, null);
     }
 }
@@ -0,0 +1,23 @@
+package com.epam.carbot.service;
+
+/**
+ * Receives progress of a single bot turn while it is still being generated.
+ * Callbacks arrive on the turn thread, so UI code has to hop back via {@code UI.access}.
+ */
+public interface ReplyListener {
+
+    ReplyListener NONE = new ReplyListener() {
+    };
+
+    /**
+     * Next piece of the reply text; pieces arrive in order and concatenate to the reply so far.
+     */
+    default void onReplyDelta(String delta) {
+    }
+
+    /**
+     * Position in the LLM admission queue, 1 is next in line. {@code 0} means the turn left the queue.
+     */
+    default void onQueued(int position) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.epam.carbot.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs chat turns on virtual threads so that blocking LLM calls never occupy
+ * the common ForkJoin pool. At most {@code maxConcurrency} turns run at once,
+ * up to {@code queueCapacity} more wait for a slot, anything beyond is rejected.
+ * Turns submitted under the same key run one after another, different keys in parallel.
+ */
+@Component
+public class TurnExecutor implements DisposableBean {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int queueCapacity;
+
+    // key -> последний поставленный ход этого ключа
+    private final Map<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public TurnExecutor(
+            @Value("${chat.turn.max-concurrency:64}") int maxConcurrency,
+            @Value("${chat.turn.queue-capacity:256}") int queueCapacity
+    ) {
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-turn-", 0).factory());
+        this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+        this.queueCapacity = Math.max(0, queueCapacity);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return admit() ? start(task) : rejectedTurn();
+    }
+
+    /**
+     * Runs {@code task} after every turn previously submitted with the same key has finished,
+     * successfully or not. Waiting behind an earlier turn takes a slot in the queue like waiting
+     * for a free permit, so one key cannot pile up work past the bound.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+        if (!admit()) {
+            return rejectedTurn();
+        }
+        CompletableFuture<T> turn = (CompletableFuture<T>) tails.compute(key, (k, previous) -> previous == null
+                ? start(task)
+                : previous.handle((result, error) -> null).thenCompose(ignored -> start(task)));
+        turn.whenComplete((result, error) -> tails.remove(key, turn));
+        return turn;
+    }
+
+    private boolean admit() {
+        if (queued.incrementAndGet() > queueCapacity + permits.availablePermits()) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static <T> CompletableFuture<T> rejectedTurn() {
+        return CompletableFuture.failedFuture(new RejectedExecutionException("Turn queue is full"));
+    }
+
+    // место в очереди уже занято admit() и освобождается, когда ход получил разрешение
+    private <T> CompletableFuture<T> start(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } finally {
+                queued.decrementAndGet();
+            }
+            return run(task);
+        }, executor);
+    }
+
+    private <T> T run(Supplier<T> task) {
+        active.incrementAndGet();
+        try {
+            return task.get();
+        } finally {
+            active.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    public int activeCount() {
+        return active.get();
+    }
+
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    public int serializedKeyCount() {
+        return tails.size();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
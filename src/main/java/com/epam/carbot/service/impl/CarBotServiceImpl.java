@@ -7,8 +7,13 @@ import com.epam.carbot.dto.chat.ChatMessage;
 import com.epam.carbot.dto.generate.GenerateRequest;
 import com.epam.carbot.dto.generate.GenerateResponse;
 import com.epam.carbot.service.CarBotService;
+import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.ReplyListener;
+import com.epam.carbot.service.TurnExecutor;
 import com.epam.carbot.service.llm.BotAnswerParser;
+import com.epam.carbot.service.llm.IncrementalAnswerParser;
 import com.epam.carbot.service.llm.IntentRouter;
+import com.epam.carbot.service.llm.LlmAdmissionQueue;
 import com.epam.carbot.service.llm.LlmBusyException;
 import com.epam.carbot.service.llm.LlmClient;
 import com.epam.carbot.service.llm.LlmInvalidRequestException;
@@ -16,55 +21,28 @@ import com.epam.carbot.service.llm.LlmServiceException;
 import com.epam.carbot.service.llm.PromptBuilder;
 import com.epam.carbot.service.memory.MemoryService;
 import com.epam.carbot.service.memory.MemoryStore;
+import com.epam.carbot.service.memory.SlotExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import static com.epam.carbot.service.impl.AnswerContract.DELTA;
+import static com.epam.carbot.service.impl.AnswerContract.FULL;
+import static com.epam.carbot.service.impl.ChatMode.CONTINUE;
 import static com.epam.carbot.service.impl.ChatMode.INCOGNITO;
+import static com.epam.carbot.service.impl.ChatMode.NEW;
 
 @Service
 @Primary
 public class CarBotServiceImpl implements CarBotService {
 
-    private static final String SYSTEM_PROMPT = """
-            Ты автомобильный консультант по ПОКУПКЕ авто. Возвращай ТОЛЬКО один JSON-объект.
-            
-            ЗАДАЧА:
-            - Веди разговор проактивно: сам направляй пользователя к покупке.
-            - Память обязательна: используй memory как источник истины.
-            - Не усложняй: задавай короткие, понятные вопросы.
-            
-             ПРАВИЛА:
-             0) Всегда отвечай в поле reply.
-             0.1) Выводи только JSON-объект, без markdown, без ```json и без пояснений вне JSON.
-             1) Если поле в memory уже заполнено — НЕ переспрашивай.
-            2) Не сбрасывай заполненные поля в null. Если не уверен — оставь как есть.
-            3) missingFields — список полей, которые нужно добрать. Если missingFields НЕ пуст:
-               - задай ОДИН вопрос только про ПЕРВОЕ поле из missingFields.
-            4) Если missingFields пуст:
-               - предложи 2-3 конкретные модели авто под параметры и кратко объясни почему.
-             5) summary — коротко (1-2 строки) факты.
-             6) Если intent=ASK_CLARIFICATION_AND_RETURN_TO_FIELD и missingFields НЕ пуст:
-                - сначала ответь кратко на вопрос пользователя (1-2 предложения),
-                - затем задай один вопрос только про pendingField,
-                - memory не меняй по смыслу.
-            
-             ФОРМАТ (строго JSON):
-            {
-              "reply": "string",
-              "memory": {
-                "budget": string|null,
-                "country": string|null,
-                "purpose": string|null,
-                "body_type": string|null,
-                "summary": string
-              }
-            }
-            """;
-
     private static final String BUSY_MESSAGE = "Сейчас сервис занят. Попробуйте через минуту.";
     private static final String INVALID_MESSAGE = "Не удалось обработать запрос. Переформулируйте сообщение.";
     private static final String ERROR_MESSAGE = "Сервис временно недоступен. Попробуйте позже.";
@@ -78,6 +56,14 @@ public class CarBotServiceImpl implements CarBotService {
     private final MemoryStore memoryStore;
     private final MemoryService memoryService;
     private final IntentRouter intentRouter;
+    private final SlotExtractor slotExtractor;
+    private final double slotMinConfidence;
+    private final TurnExecutor turnExecutor;
+    private final LlmAdmissionQueue admissionQueue;
+    private final ChatSessionService sessions;
+    private final boolean continueChats;
+    private final AnswerContract answerContract;
+    private final TurnMetrics metrics;
 
     public CarBotServiceImpl(
             LlmClient llmClient,
@@ -85,7 +71,15 @@ public class CarBotServiceImpl implements CarBotService {
             BotAnswerParser answerParser,
             MemoryStore memoryStore,
             MemoryService memoryService,
-            IntentRouter intentRouter
+            IntentRouter intentRouter,
+            SlotExtractor slotExtractor,
+            TurnExecutor turnExecutor,
+            LlmAdmissionQueue admissionQueue,
+            ChatSessionService sessions,
+            MeterRegistry meterRegistry,
+            @Value("${llm.chat-mode:incognito}") String chatMode,
+            @Value("${chat.slots.min-confidence:0.75}") double slotMinConfidence,
+            @Value("${llm.answer-contract:full}") String answerContract
     ) {
         this.llmClient = llmClient;
         this.promptBuilder = promptBuilder;
@@ -93,11 +87,32 @@ public class CarBotServiceImpl implements CarBotService {
         this.memoryStore = memoryStore;
         this.memoryService = memoryService;
         this.intentRouter = intentRouter;
+        this.slotExtractor = slotExtractor;
+        this.slotMinConfidence = slotMinConfidence;
+        this.turnExecutor = turnExecutor;
+        this.admissionQueue = admissionQueue;
+        this.sessions = sessions;
+        this.continueChats = CONTINUE.getCode().equalsIgnoreCase(chatMode);
+        this.answerContract = DELTA.getCode().equalsIgnoreCase(answerContract) ? DELTA : FULL;
+        this.metrics = new TurnMetrics(meterRegistry, this.answerContract);
     }
 
     @Override
     public BotReply reply(String sessionId, String username, String userText, List<ChatMessage> recentHistory, String pendingField) {
-        return sendRequest(sessionId, username, userText, recentHistory, pendingField);
+        return sendRequest(sessionId, username, userText, recentHistory, pendingField, ReplyListener.NONE);
+    }
+
+    @Override
+    public CompletableFuture<BotReply> replyAsync(String sessionId, String username, String userText, List<ChatMessage> recentHistory, String pendingField, ReplyListener listener) {
+        // ходы одной сессии идут по очереди, иначе параллельные merge затирают поля друг друга
+        return turnExecutor.submit(sessionId, () -> sendRequest(sessionId, username, userText, recentHistory, pendingField, listener))
+                .exceptionally(e -> {
+                    if (e instanceof RejectedExecutionException || e.getCause() instanceof RejectedExecutionException) {
+                        logger.warn("turn rejected: active={}, queued={}", turnExecutor.activeCount(), turnExecutor.queuedCount());
+                        return new BotReply(BUSY_MESSAGE, pendingField);
+                    }
+                    throw e instanceof RuntimeException re ? re : new IllegalStateException(e);
+                });
     }
 
     public BotReply sendRequest(
@@ -105,7 +120,8 @@ public class CarBotServiceImpl implements CarBotService {
             String username,
             String message,
             List<ChatMessage> recentHistory,
-            String pendingField
+            String pendingField,
+            ReplyListener listener
     ) {
         logger.debug("processing message for user={}, session={}", username, sessionId);
         Memory current = memoryStore.get(sessionId);
@@ -114,74 +130,166 @@ public class CarBotServiceImpl implements CarBotService {
         String expectedField = missingFields.isEmpty() ? null : missingFields.get(0);
 
         IntentRouter.Intent intent = intentRouter.detectIntent(message, missingFields, pendingField);
+        metrics.intent(intent);
 
         if (expectedField != null && intent == IntentRouter.Intent.OTHER) {
+            metrics.route(TurnMetrics.Route.FIELD_QUESTION);
             return new BotReply(fieldQuestion(expectedField), expectedField);
         }
 
+        if (expectedField != null && intent == IntentRouter.Intent.PROVIDE_INFO) {
+            // все недостающие поля сразу; если в сообщении есть что-то ещё, его разбирает модель
+            List<SlotExtractor.SlotValue> slots = slotExtractor.extractAll(missingFields, message);
+            if (!slots.isEmpty() && slots.stream().allMatch(slot -> slot.confidence() >= slotMinConfidence)) {
+                current = memoryStore.compute(sessionId, latest -> {
+                    Memory merged = latest;
+                    for (SlotExtractor.SlotValue slot : slots) {
+                        merged = memoryService.merge(merged, slot.toMemory());
+                    }
+                    return merged;
+                });
+                missingFields = memoryService.computeMissingFields(current);
+                logger.debug("slots {} filled locally", slots);
+
+                // пока есть что спрашивать, модель не нужна; подбор моделей — уже через LLM
+                if (!missingFields.isEmpty()) {
+                    metrics.route(TurnMetrics.Route.SLOT_FILLED);
+                    return new BotReply(fieldQuestion(missingFields.get(0)), missingFields.get(0));
+                }
+                expectedField = null;
+            }
+        }
+
         String flowIntent = intent.name();
         if (expectedField != null && intent == IntentRouter.Intent.ASK_CLARIFICATION) {
             flowIntent = "ASK_CLARIFICATION_AND_RETURN_TO_FIELD";
         }
 
-        String prompt = promptBuilder.build(
-                SYSTEM_PROMPT,
-                current,
-                missingFields,
-                expectedField,
-                flowIntent,
-                recentHistory,
-                message
-        );
-        GenerateRequest request = new GenerateRequest(prompt, INCOGNITO.getCode(), null);
-
-        GenerateResponse body;
+        String chatUrl = continueChats ? sessions.chatUrl(sessionId) : null;
+        metrics.route(TurnMetrics.Route.LLM);
+
+        long start = System.nanoTime();
+        LlmTurn turn = null;
         try {
-            body = llmClient.generate(request);
+            if (chatUrl != null) {
+                String delta = promptBuilder.buildDelta(current, missingFields, expectedField, flowIntent, message);
+                turn = continueChat(sessionId, chatUrl, sessions.chatBackend(sessionId), delta, listener);
+            }
+            if (turn == null) {
+                String prompt = promptBuilder.build(
+                        answerContract.getSystemPrompt(),
+                        current,
+                        missingFields,
+                        expectedField,
+                        flowIntent,
+                        recentHistory,
+                        message
+                );
+                ChatMode mode = continueChats ? NEW : INCOGNITO;
+                // ключ кеша ответов — состояние диалога без истории; нужен только разовым запросам
+                String cacheKey = mode == INCOGNITO
+                        ? promptBuilder.stateKey(current, missingFields, expectedField, flowIntent, message)
+                        : null;
+                turn = generate(sessionId, new GenerateRequest(prompt, mode.getCode(), null, null, cacheKey), listener);
+            }
         } catch (LlmBusyException e) {
+            metrics.llmCall(TurnMetrics.Outcome.BUSY, System.nanoTime() - start);
             logger.warn("llm busy: {}", e.getMessage());
             return new BotReply(BUSY_MESSAGE, expectedField);
         } catch (LlmInvalidRequestException e) {
+            metrics.llmCall(TurnMetrics.Outcome.INVALID, System.nanoTime() - start);
             logger.warn("llm invalid request: {}", e.getMessage());
             return new BotReply(INVALID_MESSAGE, expectedField);
         } catch (LlmServiceException e) {
+            metrics.llmCall(TurnMetrics.Outcome.ERROR, System.nanoTime() - start);
             logger.error("llm error", e);
             return new BotReply(ERROR_MESSAGE, expectedField);
         }
 
+        long elapsed = System.nanoTime() - start;
+        GenerateResponse body = turn.body();
+        IncrementalAnswerParser answerStream = turn.answer();
+        if (continueChats && turn.bindChat() && body != null && body.chatUrl() != null) {
+            sessions.setChatUrl(sessionId, body.chatUrl(), body.backend());
+        }
+
         if (body == null || Boolean.FALSE.equals(body.ok()) || body.text() == null) {
+            metrics.llmCall(TurnMetrics.Outcome.ERROR, elapsed);
             return new BotReply(UNHEARD_MESSAGE, expectedField);
         }
 
-        String content = body.text();
-
+        BotReply result;
         try {
-            BotAnswer answer = answerParser.parse(content);
-
-            if (expectedField != null && intent == IntentRouter.Intent.ASK_CLARIFICATION) {
-                return new BotReply(answer.reply(), expectedField);
+            if (!answerStream.hasInput()) {
+                answerStream.feed(body.text());
             }
+            BotAnswer answer = answerStream.finish();
 
-            Memory merged = (current != null)
-                    ? memoryService.merge(current, answer.memory())
-                    : memoryService.sanitizeNewMemory(answer.memory());
-
-            memoryStore.put(sessionId, merged);
-
-            List<String> nextMissingFields = memoryService.computeMissingFields(merged);
-            String nextPendingField = nextMissingFields.isEmpty() ? null : nextMissingFields.get(0);
+            if (expectedField != null && intent == IntentRouter.Intent.ASK_CLARIFICATION) {
+                result = new BotReply(answer.reply(), expectedField);
+            } else {
+                Memory merged = memoryStore.compute(sessionId, latest -> (latest != null)
+                        ? memoryService.merge(latest, answer.memory())
+                        : memoryService.sanitizeNewMemory(answer.memory()));
 
-            String reply = answer.reply();
+                List<String> nextMissingFields = memoryService.computeMissingFields(merged);
+                String nextPendingField = nextMissingFields.isEmpty() ? null : nextMissingFields.get(0);
 
-            logger.info("answer: {}", reply);
-            logger.info("answer memory: {}", merged);
+                String reply = answer.reply();
 
-            return new BotReply(reply, nextPendingField);
+                logger.info("answer: {}", reply);
+                logger.info("answer memory: {}", merged);
 
+                result = new BotReply(reply, nextPendingField);
+            }
         } catch (Exception e) {
+            metrics.llmCall(TurnMetrics.Outcome.UNPARSABLE, elapsed);
             logger.warn("parse error", e);
             return new BotReply(UNHEARD_MESSAGE, expectedField);
         }
+
+        // исход пишется один раз: упавший после разбора merge не должен считаться и OK, и UNPARSABLE
+        metrics.llmCall(TurnMetrics.Outcome.OK, elapsed);
+        metrics.parsed(answerStream.isRepaired());
+        return result;
+    }
+
+    /**
+     * Sends only the new turn into the sidecar chat bound to the session, on the sidecar that owns it.
+     * Returns {@code null} when that chat is gone, so the caller falls back to a full prompt.
+     */
+    private LlmTurn continueChat(String sessionId, String chatUrl, String chatBackend, String deltaPrompt, ReplyListener listener) {
+        try {
+            LlmTurn turn = generate(sessionId, new GenerateRequest(deltaPrompt, CONTINUE.getCode(), chatUrl, chatBackend), listener);
+            String modeUsed = turn.body() == null ? null : turn.body().chatModeUsed();
+            if (modeUsed == null || CONTINUE.getCode().equals(modeUsed)) {
+                return turn;
+            }
+            // ответ уже сгенерирован и показан пользователю, повторный запрос стоил бы второго вызова LLM;
+            // новый чат без системного промпта не привязываем, следующий ход уйдёт полным промптом
+            logger.info("chat {} was not continued (mode={}), keeping the answer and unbinding the chat", chatUrl, modeUsed);
+            sessions.setChatUrl(sessionId, null, null);
+            return new LlmTurn(turn.body(), turn.answer(), false);
+        } catch (LlmInvalidRequestException e) {
+            logger.info("chat {} is stale: {}", chatUrl, e.getMessage());
+        }
+        sessions.setChatUrl(sessionId, null, null);
+        return null;
+    }
+
+    private LlmTurn generate(String sessionId, GenerateRequest request, ReplyListener listener) {
+        IncrementalAnswerParser answerStream = answerParser.newIncremental(
+                listener == ReplyListener.NONE ? null : listener::onReplyDelta);
+        metrics.promptSize(request.prompt().length());
+        long start = System.nanoTime();
+        GenerateResponse body = admissionQueue.call(sessionId, listener::onQueued,
+                () -> llmClient.generateStream(request, answerStream::feed));
+        int answerChars = body == null || body.text() == null ? 0 : body.text().length();
+        metrics.answerSize(answerChars);
+        // для сравнения контрактов ответа: время хода и длина того, что сгенерировала модель
+        logger.info("llm turn: contract={}, {} ms, answer {} chars", answerContract.getCode(),
+                (System.nanoTime() - start) / 1_000_000, answerChars);
+        return new LlmTurn(body, answerStream, true);
     }
 
     private String fieldQuestion(String field) {
@@ -193,4 +301,10 @@ public class CarBotServiceImpl implements CarBotService {
             default -> "Уточните, пожалуйста, недостающие параметры для подбора.";
         };
     }
+
+    /**
+     * @param bindChat whether the chat the answer came from may be continued on the next turn
+     */
+    private record LlmTurn(GenerateResponse body, IncrementalAnswerParser answer, boolean bindChat) {
+    }
 }
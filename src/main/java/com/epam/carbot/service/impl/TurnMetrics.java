@@ -0,0 +1,100 @@
+package com.epam.carbot.service.impl;
+
+import com.epam.carbot.service.llm.IntentRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of one bot turn: how it was answered, how long the LLM took and with what outcome,
+ * prompt and answer sizes and how often the answer needed repairing. All meters are
+ * registered up front, so recording is a plain field access.
+ */
+class TurnMetrics {
+
+    enum Route {
+        // ответ-вопрос без LLM: сообщение не по делу, пока не все поля собраны
+        FIELD_QUESTION,
+        // поле распознано локально, следующий вопрос тоже без LLM
+        SLOT_FILLED,
+        LLM
+    }
+
+    enum Outcome {
+        OK, BUSY, INVALID, ERROR, UNPARSABLE
+    }
+
+    private final Map<IntentRouter.Intent, Counter> intents = new EnumMap<>(IntentRouter.Intent.class);
+    private final Map<Route, Counter> routes = new EnumMap<>(Route.class);
+    private final Map<Outcome, Timer> llmLatency = new EnumMap<>(Outcome.class);
+    private final DistributionSummary promptSize;
+    private final DistributionSummary answerSize;
+    private final Counter parsedClean;
+    private final Counter parsedRepaired;
+
+    TurnMetrics(MeterRegistry registry, AnswerContract contract) {
+        for (IntentRouter.Intent intent : IntentRouter.Intent.values()) {
+            intents.put(intent, Counter.builder("carbot.intent")
+                    .tag("intent", tagValue(intent))
+                    .register(registry));
+        }
+        for (Route route : Route.values()) {
+            routes.put(route, Counter.builder("carbot.turns")
+                    .description("Turns by how they were answered")
+                    .tag("route", tagValue(route))
+                    .register(registry));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            llmLatency.put(outcome, Timer.builder("carbot.llm.turn")
+                    .description("LLM call of a turn, from admission to the last chunk")
+                    .tag("outcome", tagValue(outcome))
+                    .tag("contract", contract.getCode())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        promptSize = DistributionSummary.builder("carbot.llm.prompt.size")
+                .baseUnit("chars")
+                .tag("contract", contract.getCode())
+                .register(registry);
+        answerSize = DistributionSummary.builder("carbot.llm.answer.size")
+                .baseUnit("chars")
+                .tag("contract", contract.getCode())
+                .register(registry);
+        parsedClean = Counter.builder("carbot.answer.parsed").tag("repaired", "false").register(registry);
+        parsedRepaired = Counter.builder("carbot.answer.parsed").tag("repaired", "true").register(registry);
+    }
+
+    void intent(IntentRouter.Intent intent) {
+        intents.get(intent).increment();
+    }
+
+    void route(Route route) {
+        routes.get(route).increment();
+    }
+
+    void llmCall(Outcome outcome, long nanos) {
+        llmLatency.get(outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void promptSize(int chars) {
+        promptSize.record(chars);
+    }
+
+    void answerSize(int chars) {
+        answerSize.record(chars);
+    }
+
+    void parsed(boolean repaired) {
+        (repaired ? parsedRepaired : parsedClean).increment();
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
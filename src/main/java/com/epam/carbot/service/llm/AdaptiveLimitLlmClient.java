@@ -0,0 +1,143 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * AIMD concurrency limit in front of another {@link LlmClient}. The limit grows by one per
+ * window of successful calls while latency stays close to the observed baseline, and is cut
+ * by {@code backoffRatio} on 409 or on a latency spike, at most once per round trip: calls that
+ * started before the last cut saw the old load and do not cut again. Latency is what the sidecar controls:
+ * time to the first chunk for streams, time per answer character otherwise, so a long answer
+ * is not taken for overload. The admission queue admits by {@link #limit()}, so calls
+ * normally wait there; calls above the limit that get here anyway are shed with
+ * {@link LlmBusyException}.
+ */
+public class AdaptiveLimitLlmClient implements LlmClient {
+
+    private static final double BASELINE_ALPHA = 0.05;
+
+    // короткие ответы считаются не короче этого, иначе постоянные затраты на вызов выглядят всплеском
+    private static final int MIN_NORMALIZED_CHARS = 200;
+
+    private final LlmClient delegate;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong shed = new AtomicLong();
+
+    private double limit;
+    private double firstChunkBaselineNanos;
+    private double perCharBaselineNanos;
+    // System.nanoTime() последнего снижения лимита
+    private long lastCutNanos = System.nanoTime() - 1;
+
+    public AdaptiveLimitLlmClient(LlmClient delegate, int initialLimit, int minLimit, int maxLimit,
+                                  double backoffRatio, double latencyTolerance) {
+        this.delegate = delegate;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest request) {
+        return limited((start, firstChunk) -> delegate.generate(request));
+    }
+
+    @Override
+    public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        return limited((start, firstChunk) -> delegate.generateStream(request, chunk -> {
+            firstChunk.compareAndSet(0, Math.max(1, System.nanoTime() - start));
+            onChunk.accept(chunk);
+        }));
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public int inFlightCount() {
+        return inFlight.get();
+    }
+
+    public long shedCount() {
+        return shed.get();
+    }
+
+    private GenerateResponse limited(Call call) {
+        int current = inFlight.incrementAndGet();
+        if (current > limit()) {
+            inFlight.decrementAndGet();
+            shed.incrementAndGet();
+            throw new LlmBusyException("LLM concurrency limit reached");
+        }
+
+        long start = System.nanoTime();
+        AtomicLong firstChunk = new AtomicLong();
+        try {
+            GenerateResponse response = call.run(start, firstChunk);
+            long elapsed = System.nanoTime() - start;
+            if (firstChunk.get() > 0) {
+                onSuccess(true, firstChunk.get(), current, start);
+            } else {
+                int chars = response == null || response.text() == null ? 0 : response.text().length();
+                onSuccess(false, elapsed / Math.max(MIN_NORMALIZED_CHARS, chars), current, start);
+            }
+            return response;
+        } catch (LlmBusyException e) {
+            onOverload(start);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private synchronized void onSuccess(boolean firstChunk, long latencyNanos, int inFlightAtStart, long start) {
+        // у стримов и обычных вызовов разные величины, и базы у них свои
+        double baseline = firstChunk ? firstChunkBaselineNanos : perCharBaselineNanos;
+        if (baseline == 0) {
+            baseline = latencyNanos;
+        }
+
+        boolean spike = latencyNanos > baseline * latencyTolerance;
+        baseline += BASELINE_ALPHA * (latencyNanos - baseline);
+        if (firstChunk) {
+            firstChunkBaselineNanos = baseline;
+        } else {
+            perCharBaselineNanos = baseline;
+        }
+        if (spike) {
+            onOverload(start);
+            return;
+        }
+
+        // растим лимит только когда он действительно был упором
+        if (inFlightAtStart * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private synchronized void onOverload(long start) {
+        // пачка медленных ответов, отправленных до снижения, — один сигнал, а не N
+        if (start - lastCutNanos <= 0) {
+            return;
+        }
+        lastCutNanos = System.nanoTime();
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        GenerateResponse run(long start, AtomicLong firstChunk);
+    }
+}
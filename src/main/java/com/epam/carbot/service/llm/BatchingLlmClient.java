@@ -0,0 +1,156 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects concurrent requests for up to {@code window}, or until {@code maxBatchSize} are
+ * waiting, and sends them to the transport as one {@link #generateBatch} exchange. Each caller
+ * gets the response at its own position. Requests pinned to a sidecar are batched only with
+ * requests pinned to the same one. Batched answers are not streamed: a streaming caller
+ * receives the whole text once the batch returns. {@link #close()} stops the collector and
+ * the senders and fails requests still waiting for a batch.
+ */
+public class BatchingLlmClient implements LlmClient, AutoCloseable {
+
+    private final LlmClient delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-batch-", 0).factory());
+    private final Thread collector;
+    private volatile boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedRequests = new AtomicLong();
+
+    public BatchingLlmClient(LlmClient delegate, Duration window, int maxBatchSize) {
+        this.delegate = delegate;
+        this.windowNanos = Math.max(0, window.toNanos());
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.collector = Thread.ofVirtual().name("llm-batch-collector").start(this::collect);
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest request) {
+        Pending pending = new Pending(request, new CompletableFuture<>());
+        queue.add(pending);
+        // close() мог уже разобрать очередь — тогда ответа не будет
+        if (closed && queue.remove(pending)) {
+            throw stopped(null);
+        }
+        try {
+            return pending.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    public long batchCount() {
+        return batches.get();
+    }
+
+    public long batchedRequestCount() {
+        return batchedRequests.get();
+    }
+
+    public int waitingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        collector.interrupt();
+        senders.shutdownNow();
+        failWaiting();
+    }
+
+    private void collect() {
+        while (!closed) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(p -> p.result().completeExceptionally(stopped(e)));
+                failWaiting();
+                return;
+            }
+            for (List<Pending> group : byBackend(batch)) {
+                try {
+                    // отправляем в отдельном потоке, чтобы сразу собирать следующую пачку
+                    senders.execute(() -> send(group));
+                } catch (RejectedExecutionException e) {
+                    group.forEach(p -> p.result().completeExceptionally(stopped(e)));
+                }
+            }
+        }
+    }
+
+    // продолженный чат живёт в браузере одного сайдкара: пачка уходит целиком туда
+    private static Collection<List<Pending>> byBackend(List<Pending> batch) {
+        Map<String, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            groups.computeIfAbsent(pending.request().backend(), backend -> new ArrayList<>()).add(pending);
+        }
+        return groups.values();
+    }
+
+    private void failWaiting() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(stopped(null));
+        }
+    }
+
+    private static LlmServiceException stopped(Exception cause) {
+        return new LlmServiceException("LLM batching stopped", cause);
+    }
+
+    private void send(List<Pending> batch) {
+        batches.incrementAndGet();
+        batchedRequests.addAndGet(batch.size());
+        try {
+            if (batch.size() == 1) {
+                Pending only = batch.get(0);
+                only.result().complete(delegate.generate(only.request()));
+                return;
+            }
+
+            List<GenerateResponse> responses = delegate.generateBatch(batch.stream().map(Pending::request).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(responses.get(i));
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(p -> p.result().completeExceptionally(e));
+        }
+    }
+
+    private record Pending(GenerateRequest request, CompletableFuture<GenerateResponse> result) {
+    }
+}
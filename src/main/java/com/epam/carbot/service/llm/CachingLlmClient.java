@@ -0,0 +1,138 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * LRU + TTL cache of successful answers in front of another {@link LlmClient}.
+ * Only stateless (incognito) requests are cached: any other mode is bound to a sidecar chat.
+ * Entries are keyed by {@link PromptDigest#cacheKey}, i.e. by the dialog state when the caller supplies it.
+ */
+public class CachingLlmClient implements LlmClient {
+
+    private final LlmClient delegate;
+    private final int maxSize;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final Map<String, CachedResponse> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingLlmClient(LlmClient delegate, int maxSize, Duration ttl) {
+        this(delegate, maxSize, ttl, Clock.systemUTC());
+    }
+
+    CachingLlmClient(LlmClient delegate, int maxSize, Duration ttl, Clock clock) {
+        this.delegate = delegate;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                if (size() > CachingLlmClient.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest request) {
+        if (!isCacheable(request)) {
+            return delegate.generate(request);
+        }
+
+        String key = PromptDigest.cacheKey(request);
+        GenerateResponse cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        GenerateResponse response = delegate.generate(request);
+        store(key, response);
+        return response;
+    }
+
+    @Override
+    public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        if (!isCacheable(request)) {
+            return delegate.generateStream(request, onChunk);
+        }
+
+        String key = PromptDigest.cacheKey(request);
+        GenerateResponse cached = lookup(key);
+        if (cached != null) {
+            onChunk.accept(cached.text());
+            return cached;
+        }
+
+        GenerateResponse response = delegate.generateStream(request, onChunk);
+        store(key, response);
+        return response;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean isCacheable(GenerateRequest request) {
+        return PromptDigest.isStateless(request);
+    }
+
+    private synchronized GenerateResponse lookup(String key) {
+        CachedResponse entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.isExpired(ttl, clock.instant())) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.response();
+    }
+
+    private void store(String key, GenerateResponse response) {
+        if (response == null || Boolean.FALSE.equals(response.ok()) || response.text() == null) {
+            return;
+        }
+        synchronized (this) {
+            entries.put(key, new CachedResponse(response, clock.instant()));
+        }
+    }
+
+    private record CachedResponse(GenerateResponse response, Instant storedAt) {
+        private boolean isExpired(Duration ttl, Instant now) {
+            return storedAt.plus(ttl).isBefore(now);
+        }
+    }
+}
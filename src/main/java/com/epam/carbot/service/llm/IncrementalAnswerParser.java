@@ -0,0 +1,216 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.domain.BotAnswer;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.function.Consumer;
+
+/**
+ * Single-pass reader for one model answer that may arrive in chunks.
+ * Skips markdown fences and prefixes up to the first '{', copies the JSON object
+ * while escaping raw control characters inside strings, and decodes the top-level
+ * {@code reply} string (or {@code r} of the delta contract) on the fly so it can be shown
+ * before {@code memory} arrives. Only the newly decoded part of the reply is handed out per
+ * chunk; the whole reply string is built once, by {@link #finish()}.
+ * Not thread-safe: one instance per answer.
+ */
+public class IncrementalAnswerParser {
+
+    private static final String REPLY_KEY = "reply";
+    private static final String SHORT_REPLY_KEY = "r";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ObjectMapper mapper;
+    private final Consumer<String> onReply;
+
+    private final StringBuilder json = new StringBuilder(512);
+    private final StringBuilder key = new StringBuilder(16);
+    private final StringBuilder reply = new StringBuilder(256);
+
+    private int depth;
+    private boolean fed;
+    private boolean done;
+    private boolean repaired;
+
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;
+    private boolean readingKey;
+    private boolean readingReply;
+    private boolean replyKeySeen;
+    private boolean replyComplete;
+    private int unicodeDigits = -1;
+    private int unicodeValue;
+
+    IncrementalAnswerParser(ObjectMapper mapper, Consumer<String> onReply) {
+        this.mapper = mapper;
+        this.onReply = onReply;
+    }
+
+    public void feed(CharSequence chunk) {
+        if (chunk == null || done) {
+            return;
+        }
+        fed = true;
+
+        int replyLength = reply.length();
+        for (int i = 0; i < chunk.length() && !done; i++) {
+            accept(chunk.charAt(i));
+        }
+
+        // только прирост: копировать весь ответ на каждый кусок — квадратично от его длины
+        if (onReply != null && reply.length() != replyLength) {
+            onReply.accept(reply.substring(replyLength));
+        }
+    }
+
+    public boolean hasInput() {
+        return fed;
+    }
+
+    public boolean isReplyComplete() {
+        return replyComplete;
+    }
+
+    public boolean isRepaired() {
+        return repaired;
+    }
+
+    public BotAnswer finish() throws Exception {
+        return mapper.readValue(json.toString(), BotAnswer.class);
+    }
+
+    private void accept(char c) {
+        if (depth == 0) {
+            if (c == '{') {
+                json.append(c);
+                depth = 1;
+                expectKey = true;
+            }
+            return;
+        }
+
+        if (inString) {
+            acceptInString(c);
+            return;
+        }
+
+        json.append(c);
+        switch (c) {
+            case '"' -> {
+                inString = true;
+                if (depth == 1 && expectKey) {
+                    readingKey = true;
+                    key.setLength(0);
+                } else if (depth == 1 && replyKeySeen && !replyComplete) {
+                    readingReply = true;
+                }
+            }
+            case '{', '[' -> depth++;
+            case '}', ']' -> {
+                depth--;
+                if (depth == 0) {
+                    done = true;
+                }
+            }
+            case ',' -> {
+                if (depth == 1) {
+                    expectKey = true;
+                    replyKeySeen = false;
+                }
+            }
+            case ':' -> {
+                if (depth == 1) {
+                    expectKey = false;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void acceptInString(char c) {
+        if (escape) {
+            json.append(c);
+            escape = false;
+            decodeEscape(c);
+            return;
+        }
+
+        if (unicodeDigits >= 0) {
+            json.append(c);
+            decodeUnicodeDigit(c);
+            return;
+        }
+
+        if (c == '\\') {
+            json.append(c);
+            escape = true;
+            return;
+        }
+
+        if (c == '"') {
+            json.append(c);
+            inString = false;
+            if (readingKey) {
+                readingKey = false;
+                replyKeySeen = REPLY_KEY.contentEquals(key) || SHORT_REPLY_KEY.contentEquals(key);
+            } else if (readingReply) {
+                readingReply = false;
+                replyComplete = true;
+            }
+            return;
+        }
+
+        if (c < 0x20) {
+            appendEscapedControlChar(c);
+            repaired = true;
+        } else {
+            json.append(c);
+        }
+        append(c);
+    }
+
+    private void decodeEscape(char c) {
+        switch (c) {
+            case 'n' -> append('\n');
+            case 'r' -> append('\r');
+            case 't' -> append('\t');
+            case 'b' -> append('\b');
+            case 'f' -> append('\f');
+            case 'u' -> {
+                unicodeDigits = 0;
+                unicodeValue = 0;
+            }
+            default -> append(c);
+        }
+    }
+
+    private void decodeUnicodeDigit(char c) {
+        int digit = Character.digit(c, 16);
+        unicodeValue = (unicodeValue << 4) | Math.max(digit, 0);
+        if (++unicodeDigits == 4) {
+            unicodeDigits = -1;
+            append((char) unicodeValue);
+        }
+    }
+
+    private void append(char c) {
+        if (readingKey) {
+            key.append(c);
+        } else if (readingReply) {
+            reply.append(c);
+        }
+    }
+
+    private void appendEscapedControlChar(char c) {
+        switch (c) {
+            case '\n' -> json.append("\\n");
+            case '\r' -> json.append("\\r");
+            case '\t' -> json.append("\\t");
+            case '\b' -> json.append("\\b");
+            case '\f' -> json.append("\\f");
+            default -> json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+        }
+    }
+}
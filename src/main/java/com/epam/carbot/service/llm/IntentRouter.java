@@ -1,26 +1,43 @@
 package com.epam.carbot.service.llm;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
-import java.util.Locale;
 
 @Component
 public class IntentRouter {
 
+    private static final int MAX_COUNTRY_ANSWER_LENGTH = 40;
+
+    private final PhraseMatcher phrases;
+    private final long clarification;
+    private final long fieldValueMarkers;
+
+    public IntentRouter(@Value("${chat.intent.phrases:classpath:intent-phrases.txt}") Resource phrases) {
+        this(PhraseMatcher.load(phrases));
+    }
+
+    IntentRouter(PhraseMatcher phrases) {
+        this.phrases = phrases;
+        this.clarification = phrases.labelBit("clarification");
+        this.fieldValueMarkers = phrases.labelBit("digit") | phrases.labelBit("currency");
+    }
+
     public Intent detectIntent(String message, List<String> missingFields, String pendingField) {
         if (message == null || message.isBlank()) {
             return Intent.OTHER;
         }
 
-        String text = message.trim();
-        String lower = text.toLowerCase(Locale.ROOT);
+        // один проход автомата по сообщению вместо отдельного contains на каждую фразу
+        long found = phrases.labelsIn(message);
 
-        if (looksLikeClarificationQuestion(text, lower)) {
+        if ((found & clarification) != 0) {
             return Intent.ASK_CLARIFICATION;
         }
 
-        if (pendingField != null && !pendingField.isBlank() && looksLikeFieldValue(lower, pendingField)) {
+        if (pendingField != null && !pendingField.isBlank() && looksLikeFieldValue(message, found, pendingField)) {
             return Intent.PROVIDE_INFO;
         }
 
@@ -31,28 +48,23 @@ public class IntentRouter {
         return Intent.OTHER;
     }
 
-    private boolean looksLikeClarificationQuestion(String text, String lower) {
-        return text.contains("?")
-                || lower.contains("что лучше")
-                || lower.contains("почему")
-                || lower.contains("в чем разница")
-                || lower.contains("а если")
-                || lower.contains("как выбрать")
-                || lower.contains("какой лучше");
-    }
-
-    private boolean looksLikeFieldValue(String lower, String pendingField) {
+    // вопросительный знак входит в clarification, поэтому сюда доходят только сообщения без него
+    private boolean looksLikeFieldValue(String message, long found, String pendingField) {
         return switch (pendingField) {
-            case "budget" -> lower.matches(".*\\d.*")
-                    || lower.contains("руб")
-                    || lower.contains("usd")
-                    || lower.contains("eur");
-            case "country" -> !lower.contains("?") && lower.length() <= 40;
-            case "purpose", "body_type" -> !lower.contains("?");
+            case "budget" -> (found & fieldValueMarkers) != 0;
+            case "country" -> trimmedLength(message) <= MAX_COUNTRY_ANSWER_LENGTH;
             default -> true;
         };
     }
 
+    private static int trimmedLength(String text) {
+        int from = 0;
+        int to = text.length();
+        while (from < to && text.charAt(from) <= ' ') from++;
+        while (to > from && text.charAt(to - 1) <= ' ') to--;
+        return to - from;
+    }
+
     public enum Intent {
         PROVIDE_INFO,
         ASK_CLARIFICATION,
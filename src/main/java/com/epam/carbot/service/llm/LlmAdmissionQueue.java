@@ -0,0 +1,319 @@
+package com.epam.carbot.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Admission gate in front of the sidecars. At most {@code maxInFlight} calls run at once,
+ * or as many as the adaptive limiter currently allows once {@link #limitBy} is set; the rest wait in per-session FIFO queues that are served round-robin, so one chatty
+ * session cannot starve the others. A new waiter is told its position at once; positions of
+ * the others are recounted at most every {@code POSITION_UPDATE_INTERVAL}, with one trailing
+ * recount when a change falls inside the interval. A call that still
+ * gets 409 goes back to the queue after a growing pause, at most {@code busyRetries} times
+ * and never past the wait timeout.
+ */
+@Component
+public class LlmAdmissionQueue {
+
+    private static final long BUSY_BASE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long BUSY_MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long POSITION_UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final Executor TRAILING_UPDATES = runnable -> Thread.ofVirtual().name("llm-admission-positions").start(runnable);
+
+    private final int maxDepth;
+    private final long maxWaitNanos;
+    private final int busyRetries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, ArrayDeque<Ticket>> waitingBySession = new LinkedHashMap<>();
+    private volatile IntSupplier limit;
+    private int inFlight;
+    private int waiting;
+    private long nextPositionUpdate = System.nanoTime();
+    private boolean trailingUpdateScheduled;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public LlmAdmissionQueue(
+            @Value("${llm.admission.max-in-flight:16}") int maxInFlight,
+            @Value("${llm.admission.max-depth:200}") int maxDepth,
+            @Value("${llm.admission.max-wait:60s}") Duration maxWait,
+            @Value("${llm.admission.busy-retries:3}") int busyRetries
+    ) {
+        int fixedLimit = Math.max(1, maxInFlight);
+        this.limit = () -> fixedLimit;
+        this.maxDepth = Math.max(0, maxDepth);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.busyRetries = Math.max(0, busyRetries);
+    }
+
+    public <T> T call(String sessionId, IntConsumer onPosition, Supplier<T> call) {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        for (int attempt = 0; ; attempt++) {
+            acquire(sessionId, onPosition, deadline);
+            long pause = 0;
+            try {
+                return call.get();
+            } catch (LlmBusyException e) {
+                // 200 мс, 400 мс, 800 мс... — сайдкар успевает разгрузиться, а лимитер уже урезал лимит
+                pause = Math.min(BUSY_MAX_DELAY_NANOS, BUSY_BASE_DELAY_NANOS << Math.min(attempt, 16));
+                if (attempt >= busyRetries || System.nanoTime() + pause >= deadline) {
+                    throw e;
+                }
+            } finally {
+                release(true);
+                if (pause > 0) {
+                    pause(pause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the in-flight limit from {@code limit} instead of {@code max-in-flight}, so calls
+     * over the limiter's current limit wait here instead of being shed by it.
+     */
+    public void limitBy(IntSupplier limit) {
+        this.limit = limit;
+        // лимит мог оказаться выше прежнего
+        release(false);
+    }
+
+    public int waitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long admittedCount() {
+        return admitted.get();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public long timedOutCount() {
+        return timedOut.get();
+    }
+
+    private void acquire(String sessionId, IntConsumer onPosition, long deadline) {
+        Ticket ticket;
+        List<Runnable> notifications;
+        lock.lock();
+        try {
+            if (inFlight < limit.getAsInt() && waiting == 0) {
+                inFlight++;
+                admitted.incrementAndGet();
+                return;
+            }
+            if (waiting >= maxDepth) {
+                rejected.incrementAndGet();
+                throw new LlmBusyException("LLM admission queue is full");
+            }
+            ticket = new Ticket(onPosition);
+            ArrayDeque<Ticket> queue = waitingBySession.computeIfAbsent(sessionId, key -> new ArrayDeque<>());
+            queue.addLast(ticket);
+            waiting++;
+            ticket.lastPosition = positionOf(sessionId, queue.size());
+            notifications = positionUpdates();
+        } finally {
+            lock.unlock();
+        }
+        onPosition.accept(ticket.lastPosition);
+        notifications.forEach(Runnable::run);
+
+        try {
+            ticket.granted.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            admitted.incrementAndGet();
+            onPosition.accept(0);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (!abandon(sessionId, ticket)) {
+                // слот выдали в последний момент — возвращаем его
+                release(true);
+            }
+            timedOut.incrementAndGet();
+            throw new LlmBusyException("Timed out waiting in LLM admission queue");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean abandon(String sessionId, Ticket ticket) {
+        List<Runnable> notifications;
+        lock.lock();
+        try {
+            ArrayDeque<Ticket> queue = waitingBySession.get(sessionId);
+            if (queue == null || !queue.remove(ticket)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                waitingBySession.remove(sessionId);
+            }
+            waiting--;
+            notifications = positionUpdates();
+        } finally {
+            lock.unlock();
+        }
+        notifications.forEach(Runnable::run);
+        return true;
+    }
+
+    /**
+     * Frees the slot of a finished call, if {@code finished}, and hands free slots to waiters.
+     * The limit is read on every release, so a lowered limit takes effect as calls finish.
+     */
+    private void release(boolean finished) {
+        List<Ticket> granted = new ArrayList<>();
+        List<Runnable> notifications = List.of();
+        lock.lock();
+        try {
+            if (finished) {
+                inFlight--;
+            }
+            int currentLimit = limit.getAsInt();
+            while (inFlight < currentLimit && waiting > 0) {
+                Iterator<Map.Entry<String, ArrayDeque<Ticket>>> sessions = waitingBySession.entrySet().iterator();
+                Map.Entry<String, ArrayDeque<Ticket>> head = sessions.next();
+                granted.add(head.getValue().pollFirst());
+                sessions.remove();
+                if (!head.getValue().isEmpty()) {
+                    // сессия уходит в конец круга
+                    waitingBySession.put(head.getKey(), head.getValue());
+                }
+                waiting--;
+                inFlight++;
+            }
+            if (!granted.isEmpty()) {
+                notifications = positionUpdates();
+            }
+        } finally {
+            lock.unlock();
+        }
+        granted.forEach(ticket -> ticket.granted.complete(null));
+        notifications.forEach(Runnable::run);
+    }
+
+    /**
+     * Position of the {@code round}-th waiter of a session: sessions ahead of it in the circle
+     * serve up to {@code round} waiters before it, sessions behind it one less. Under the lock.
+     */
+    private int positionOf(String sessionId, int round) {
+        int position = 0;
+        boolean ahead = true;
+        for (Map.Entry<String, ArrayDeque<Ticket>> entry : waitingBySession.entrySet()) {
+            if (entry.getKey().equals(sessionId)) {
+                position += round;
+                ahead = false;
+            } else {
+                position += Math.min(entry.getValue().size(), ahead ? round : round - 1);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Positions in serving order: sessions take turns, each contributing its oldest waiter.
+     * Only waiters whose position changed are notified, and the recount runs at most once per
+     * {@code POSITION_UPDATE_INTERVAL}: it walks every waiter, and on a long queue every grant
+     * shifts them all. Must be called under the lock; the returned callbacks run after it is released.
+     */
+    private List<Runnable> positionUpdates() {
+        long now = System.nanoTime();
+        if (now - nextPositionUpdate < 0) {
+            scheduleTrailingUpdate(nextPositionUpdate - now);
+            return List.of();
+        }
+        nextPositionUpdate = now + POSITION_UPDATE_INTERVAL_NANOS;
+
+        List<Runnable> updates = new ArrayList<>(waiting);
+        List<Iterator<Ticket>> rounds = new ArrayList<>(waitingBySession.size());
+        for (ArrayDeque<Ticket> queue : waitingBySession.values()) {
+            rounds.add(queue.iterator());
+        }
+
+        int position = 0;
+        while (!rounds.isEmpty()) {
+            Iterator<Iterator<Ticket>> round = rounds.iterator();
+            while (round.hasNext()) {
+                Iterator<Ticket> queue = round.next();
+                if (!queue.hasNext()) {
+                    round.remove();
+                    continue;
+                }
+                Ticket ticket = queue.next();
+                int current = ++position;
+                if (ticket.lastPosition != current) {
+                    ticket.lastPosition = current;
+                    updates.add(() -> ticket.onPosition.accept(current));
+                }
+            }
+        }
+        return updates;
+    }
+
+    // без него пропущенный пересчёт ждал бы следующего события, а позиции в UI стояли бы на месте
+    private void scheduleTrailingUpdate(long delayNanos) {
+        if (trailingUpdateScheduled || waiting == 0) {
+            return;
+        }
+        trailingUpdateScheduled = true;
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, TRAILING_UPDATES).execute(this::trailingUpdate);
+    }
+
+    private void trailingUpdate() {
+        List<Runnable> notifications;
+        lock.lock();
+        try {
+            trailingUpdateScheduled = false;
+            notifications = positionUpdates();
+        } finally {
+            lock.unlock();
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    private void pause(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Ticket {
+        private final IntConsumer onPosition;
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+        private int lastPosition;
+
+        private Ticket(IntConsumer onPosition) {
+            this.onPosition = onPosition;
+        }
+    }
+}
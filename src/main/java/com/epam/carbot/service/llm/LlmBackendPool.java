@@ -0,0 +1,228 @@
+package com.epam.carbot.service.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Set of Playwright sidecars. Each call goes to the healthy backend with the fewest
+ * outstanding requests; a 409 moves the call to the next backend. Backends that fail
+ * {@code failureThreshold} times in a row are taken out of rotation until a background
+ * health probe gets a 2xx from them again; the last backend in rotation is never taken out,
+ * since failing every call is worse than trying it. A call pinned to a backend (a continued
+ * chat lives in one sidecar's browser) runs only there.
+ */
+public class LlmBackendPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmBackendPool.class);
+
+    private final List<Backend> backends;
+    private final int failureThreshold;
+    private final String healthPath;
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final ScheduledExecutorService prober;
+
+    public LlmBackendPool(List<Backend> backends, int failureThreshold, Duration probeInterval, String healthPath) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one LLM backend is required");
+        }
+        this.backends = List.copyOf(backends);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.healthPath = healthPath;
+        this.prober = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("llm-health-probe").factory());
+        long interval = Math.max(1, probeInterval.toMillis());
+        prober.scheduleWithFixedDelay(this::probeEjected, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public <T> T execute(Function<RestClient, T> call) {
+        return execute(null, backend -> call.apply(backend.client));
+    }
+
+    /**
+     * Runs {@code call} on {@code pinnedUrl} only, or on the pool when it is {@code null}.
+     * A pinned backend that is unknown or out of rotation fails with {@link LlmInvalidRequestException},
+     * the same as a stale chat, so the caller starts over with a full prompt.
+     */
+    public <T> T execute(String pinnedUrl, Function<Backend, T> call) {
+        if (pinnedUrl != null) {
+            Backend pinned = find(pinnedUrl);
+            if (pinned == null || !pinned.healthy) {
+                throw new LlmInvalidRequestException("LLM backend " + pinnedUrl + " is not available");
+            }
+            return run(pinned, call);
+        }
+
+        List<Backend> tried = new ArrayList<>(backends.size());
+        LlmBusyException busy = null;
+
+        Backend backend;
+        while ((backend = pick(tried)) != null) {
+            tried.add(backend);
+            try {
+                return run(backend, call);
+            } catch (LlmBusyException e) {
+                busy = e;
+            }
+        }
+
+        if (busy != null) {
+            throw busy;
+        }
+        throw new LlmServiceException("No healthy LLM backend", null);
+    }
+
+    public List<Backend> backends() {
+        return backends;
+    }
+
+    private <T> T run(Backend backend, Function<Backend, T> call) {
+        backend.outstanding.incrementAndGet();
+        try {
+            T result = call.apply(backend);
+            backend.onSuccess();
+            return result;
+        } catch (LlmBusyException e) {
+            throw e;
+        } catch (LlmInvalidRequestException e) {
+            backend.onSuccess();
+            throw e;
+        } catch (RuntimeException e) {
+            if (!isAbandoned(e)) {
+                onFailure(backend);
+            }
+            throw e;
+        } finally {
+            backend.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * The caller gave up on the call (a cancelled hedge copy, shutdown): the interrupted
+     * exchange says nothing about the backend and is not worth repeating.
+     */
+    static boolean isAbandoned(Throwable error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException || cause instanceof InterruptedException
+                    || cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Backend find(String url) {
+        for (Backend backend : backends) {
+            if (backend.url.equals(url)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private Backend pick(List<Backend> tried) {
+        int size = backends.size();
+        int start = Math.floorMod(rotation.getAndIncrement(), size);
+
+        Backend best = null;
+        for (int i = 0; i < size; i++) {
+            Backend candidate = backends.get((start + i) % size);
+            if (!candidate.healthy || tried.contains(candidate)) {
+                continue;
+            }
+            if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private synchronized void onFailure(Backend backend) {
+        if (backend.consecutiveFailures.incrementAndGet() < failureThreshold || !backend.healthy) {
+            return;
+        }
+        if (backends.stream().noneMatch(other -> other != backend && other.healthy)) {
+            // последний живой остаётся в ротации: пусть вызовы пробуют его, а не падают все сразу
+            logger.warn("llm backend {} failed {} times but is the last one in rotation", backend.url, backend.consecutiveFailures.get());
+            return;
+        }
+        backend.healthy = false;
+        logger.warn("llm backend {} ejected after {} failures", backend.url, backend.consecutiveFailures.get());
+    }
+
+    void probeEjected() {
+        for (Backend backend : backends) {
+            if (backend.healthy) {
+                continue;
+            }
+            try {
+                // здоров только 2xx: 404 или 401 отдаёт и чужой сервис на том же адресе
+                if (backend.client.get().uri(healthPath).retrieve().toBodilessEntity().getStatusCode().is2xxSuccessful()) {
+                    restore(backend);
+                }
+            } catch (RestClientResponseException e) {
+                logger.debug("llm backend {} still unhealthy: {}", backend.url, e.getStatusCode());
+            } catch (Exception e) {
+                logger.debug("llm backend {} still unavailable: {}", backend.url, e.getMessage());
+            }
+        }
+    }
+
+    private void restore(Backend backend) {
+        backend.onSuccess();
+        backend.healthy = true;
+        logger.info("llm backend {} restored", backend.url);
+    }
+
+    @Override
+    public void close() {
+        prober.shutdownNow();
+    }
+
+    public static final class Backend {
+        private final String url;
+        private final RestClient client;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        public Backend(String url, RestClient client) {
+            this.url = url;
+            this.client = client;
+        }
+
+        private void onSuccess() {
+            consecutiveFailures.set(0);
+        }
+
+        public String url() {
+            return url;
+        }
+
+        public RestClient client() {
+            return client;
+        }
+
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        public boolean healthy() {
+            return healthy;
+        }
+    }
+}
@@ -3,6 +3,30 @@ package com.epam.carbot.service.llm;
 import com.epam.carbot.dto.generate.GenerateRequest;
 import com.epam.carbot.dto.generate.GenerateResponse;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface LlmClient {
     GenerateResponse generate(GenerateRequest request);
+
+    default GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        GenerateResponse response = generate(request);
+        if (response != null && response.text() != null) {
+            onChunk.accept(response.text());
+        }
+        return response;
+    }
+
+    /**
+     * Answers several independent requests, responses in request order.
+     * Transports that support it send them as one exchange.
+     */
+    default List<GenerateResponse> generateBatch(List<GenerateRequest> requests) {
+        List<GenerateResponse> responses = new ArrayList<>(requests.size());
+        for (GenerateRequest request : requests) {
+            responses.add(generate(request));
+        }
+        return responses;
+    }
 }
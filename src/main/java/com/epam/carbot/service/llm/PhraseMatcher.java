@@ -0,0 +1,205 @@
+package com.epam.carbot.service.llm;
+
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a labelled phrase dictionary. Transitions are precomputed into a
+ * flat table, so a message is scanned once, case-folded on the fly, in time independent of the
+ * number of phrases, and without allocating. At most 64 labels are supported.
+ */
+public final class PhraseMatcher {
+
+    private static final int ROOT = 0;
+    private static final int UNKNOWN_SYMBOL = 0;
+
+    private final List<String> labels;
+    // сложенный символ -> номер в алфавите автомата, 0 для символов вне словаря
+    private final char[] symbolOf = new char[Character.MAX_VALUE + 1];
+    private final int width;
+    private final int[] delta;
+    private final int[] terminalPhrase;
+    private final int[] outputLink;
+    private final long[] stateLabels;
+    private final int[] phraseLabel;
+    private final int[] phraseLength;
+
+    private PhraseMatcher(List<Phrase> phrases) {
+        this.labels = new ArrayList<>();
+        this.phraseLabel = new int[phrases.size()];
+        this.phraseLength = new int[phrases.size()];
+
+        int symbols = 0;
+        int maxStates = 1;
+        for (Phrase phrase : phrases) {
+            for (int i = 0; i < phrase.text().length(); i++) {
+                char c = fold(phrase.text().charAt(i));
+                if (symbolOf[c] == UNKNOWN_SYMBOL) {
+                    symbolOf[c] = (char) ++symbols;
+                }
+            }
+            maxStates += phrase.text().length();
+        }
+        this.width = symbols + 1;
+
+        int[] trie = new int[maxStates * width];
+        Arrays.fill(trie, -1);
+        int[] terminal = new int[maxStates];
+        Arrays.fill(terminal, -1);
+        int states = 1;
+
+        for (int p = 0; p < phrases.size(); p++) {
+            Phrase phrase = phrases.get(p);
+            int label = labels.indexOf(phrase.label());
+            if (label < 0) {
+                if (labels.size() == Long.SIZE) {
+                    throw new IllegalArgumentException("Too many phrase labels, max " + Long.SIZE);
+                }
+                labels.add(phrase.label());
+                label = labels.size() - 1;
+            }
+            phraseLabel[p] = label;
+            phraseLength[p] = phrase.text().length();
+
+            int state = ROOT;
+            for (int i = 0; i < phrase.text().length(); i++) {
+                int slot = state * width + symbolOf[fold(phrase.text().charAt(i))];
+                if (trie[slot] < 0) {
+                    trie[slot] = states++;
+                }
+                state = trie[slot];
+            }
+            if (terminal[state] >= 0 && phraseLabel[terminal[state]] != label) {
+                throw new IllegalArgumentException("Phrase '" + phrase.text() + "' has two labels");
+            }
+            terminal[state] = p;
+        }
+
+        this.delta = Arrays.copyOf(trie, states * width);
+        this.terminalPhrase = Arrays.copyOf(terminal, states);
+        this.outputLink = new int[states];
+        this.stateLabels = new long[states];
+        buildFailureLinks(states);
+    }
+
+    public static PhraseMatcher of(List<Phrase> phrases) {
+        return new PhraseMatcher(phrases.stream().filter(p -> !p.text().isEmpty()).toList());
+    }
+
+    /**
+     * Reads {@code label: phrase} lines; blank lines and lines starting with {@code #} are skipped.
+     */
+    public static PhraseMatcher load(Resource resource) {
+        List<Phrase> phrases = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Bad phrase line in " + resource + ": " + line);
+                }
+                phrases.add(new Phrase(line.substring(0, colon).strip(), line.substring(colon + 1).strip()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read phrases from " + resource, e);
+        }
+        return of(phrases);
+    }
+
+    /** Bit of {@code label} in the masks returned by {@link #labelsIn}, or 0 if no phrase has it. */
+    public long labelBit(String label) {
+        int index = labels.indexOf(label);
+        return index < 0 ? 0 : 1L << index;
+    }
+
+    public String label(int index) {
+        return labels.get(index);
+    }
+
+    /** Bit mask of the labels of all phrases occurring in {@code text}. */
+    public long labelsIn(CharSequence text) {
+        long found = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = delta[state * width + symbolOf[fold(text.charAt(i))]];
+            found |= stateLabels[state];
+        }
+        return found;
+    }
+
+    /** Reports every occurrence, overlapping ones included, in order of its end position. */
+    public void forEachMatch(CharSequence text, MatchHandler handler) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = delta[state * width + symbolOf[fold(text.charAt(i))]];
+            int s = terminalPhrase[state] >= 0 ? state : outputLink[state];
+            while (s > ROOT) {
+                int phrase = terminalPhrase[s];
+                handler.onMatch(phraseLabel[phrase], i + 1 - phraseLength[phrase], i + 1);
+                s = outputLink[s];
+            }
+        }
+    }
+
+    private void buildFailureLinks(int states) {
+        int[] failure = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        for (int symbol = 0; symbol < width; symbol++) {
+            int child = delta[ROOT * width + symbol];
+            if (child < 0) {
+                delta[ROOT * width + symbol] = ROOT;
+            } else {
+                failure[child] = ROOT;
+                queue.add(child);
+            }
+        }
+        delta[ROOT * width + UNKNOWN_SYMBOL] = ROOT;
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = failure[state];
+            outputLink[state] = terminalPhrase[fail] >= 0 ? fail : outputLink[fail];
+            stateLabels[state] = stateLabels[fail]
+                    | (terminalPhrase[state] >= 0 ? 1L << phraseLabel[terminalPhrase[state]] : 0);
+
+            for (int symbol = 0; symbol < width; symbol++) {
+                int slot = state * width + symbol;
+                int child = delta[slot];
+                if (child < 0) {
+                    delta[slot] = delta[fail * width + symbol];
+                } else {
+                    failure[child] = delta[fail * width + symbol];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private static char fold(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    public record Phrase(String label, String text) {
+    }
+
+    @FunctionalInterface
+    public interface MatchHandler {
+        /** {@code start} inclusive, {@code end} exclusive. */
+        void onMatch(int label, int start, int end);
+    }
+}
@@ -1,22 +1,49 @@
 package com.epam.carbot.service.llm;
 
+import com.epam.carbot.dto.generate.GenerateBatchRequest;
+import com.epam.carbot.dto.generate.GenerateBatchResponse;
+import com.epam.carbot.dto.generate.GenerateChunk;
 import com.epam.carbot.dto.generate.GenerateRequest;
 import com.epam.carbot.dto.generate.GenerateResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientResponseException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 @Component
 public class PlaywrightLlmClient implements LlmClient {
 
-    private final RestClient restClient;
+    private static final String SSE_DATA = "data:";
+
+    private final LlmBackendPool backends;
+    private final boolean streamingEnabled;
+    private final ObjectMapper mapper = new ObjectMapper();
 
-    public PlaywrightLlmClient(RestClient restClient) {
-        this.restClient = restClient;
+    public PlaywrightLlmClient(
+            LlmBackendPool backends,
+            @Value("${llm.streaming.enabled:false}") boolean streamingEnabled
+    ) {
+        this.backends = backends;
+        this.streamingEnabled = streamingEnabled;
     }
 
     @Override
     public GenerateResponse generate(GenerateRequest request) {
+        return backends.execute(request.backend(), backend -> stamp(generate(backend.client(), request), backend));
+    }
+
+    private GenerateResponse generate(RestClient restClient, GenerateRequest request) {
         try {
             return restClient.post()
                     .uri("/generate")
@@ -24,15 +51,122 @@ public class PlaywrightLlmClient implements LlmClient {
                     .retrieve()
                     .body(GenerateResponse.class);
         } catch (RestClientResponseException e) {
-            if (e.getStatusCode().value() == 409) {
-                throw new LlmBusyException("LLM API busy");
-            }
-            if (e.getStatusCode().value() == 422) {
-                throw new LlmInvalidRequestException("Invalid LLM request");
-            }
+            throw toLlmException(e.getStatusCode().value(), e);
+        } catch (Exception e) {
             throw new LlmServiceException("LLM API error", e);
+        }
+    }
+
+    @Override
+    public List<GenerateResponse> generateBatch(List<GenerateRequest> requests) {
+        String pinned = requests.isEmpty() ? null : requests.get(0).backend();
+        if (requests.stream().anyMatch(request -> !Objects.equals(pinned, request.backend()))) {
+            // одна пачка уходит в один сайдкар; BatchingLlmClient разные закрепления не смешивает
+            return LlmClient.super.generateBatch(requests);
+        }
+        return backends.execute(pinned, backend -> generateBatch(backend.client(), requests).stream()
+                .map(response -> stamp(response, backend))
+                .toList());
+    }
+
+    private List<GenerateResponse> generateBatch(RestClient restClient, List<GenerateRequest> requests) {
+        GenerateBatchResponse body;
+        try {
+            body = restClient.post()
+                    .uri("/generate/batch")
+                    .body(new GenerateBatchRequest(requests))
+                    .retrieve()
+                    .body(GenerateBatchResponse.class);
+        } catch (RestClientResponseException e) {
+            throw toLlmException(e.getStatusCode().value(), e);
+        } catch (Exception e) {
+            throw new LlmServiceException("LLM API error", e);
+        }
+
+        if (body == null || body.responses() == null || body.responses().size() != requests.size()) {
+            throw new LlmServiceException("LLM batch response does not match the request", null);
+        }
+        return body.responses();
+    }
+
+    @Override
+    public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        if (!streamingEnabled) {
+            return LlmClient.super.generateStream(request, onChunk);
+        }
+
+        return backends.execute(request.backend(),
+                backend -> stamp(generateStream(backend.client(), request, onChunk), backend));
+    }
+
+    private GenerateResponse generateStream(RestClient restClient, GenerateRequest request, Consumer<String> onChunk) {
+        try {
+            return restClient.post()
+                    .uri("/generate/stream")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .body(request)
+                    .exchange((clientRequest, clientResponse) -> {
+                        int status = clientResponse.getStatusCode().value();
+                        if (status >= 400) {
+                            throw toLlmException(status, null);
+                        }
+                        return readEvents(clientResponse.getBody(), onChunk);
+                    });
+        } catch (LlmBusyException | LlmInvalidRequestException | LlmServiceException e) {
+            throw e;
         } catch (Exception e) {
             throw new LlmServiceException("LLM API error", e);
         }
     }
+
+    private GenerateResponse readEvents(InputStream body, Consumer<String> onChunk) throws IOException {
+        StringBuilder text = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SSE_DATA)) {
+                    if (!data.isEmpty()) {
+                        data.append('\n');
+                    }
+                    int from = line.startsWith(" ", SSE_DATA.length()) ? SSE_DATA.length() + 1 : SSE_DATA.length();
+                    data.append(line, from, line.length());
+                    continue;
+                }
+                if (!line.isEmpty() || data.isEmpty()) {
+                    continue;
+                }
+
+                GenerateChunk chunk = mapper.readValue(data.toString(), GenerateChunk.class);
+                data.setLength(0);
+
+                if (chunk.delta() != null && !chunk.delta().isEmpty()) {
+                    text.append(chunk.delta());
+                    onChunk.accept(chunk.delta());
+                }
+                if (Boolean.TRUE.equals(chunk.done())) {
+                    return new GenerateResponse(chunk.ok(), text.toString(), chunk.chatModeUsed(), chunk.chatUrl());
+                }
+            }
+        }
+
+        // поток оборвался без финального события
+        throw new LlmServiceException("LLM stream ended unexpectedly", null);
+    }
+
+    // по этому адресу продолженный чат потом вернётся в тот же сайдкар
+    private static GenerateResponse stamp(GenerateResponse response, LlmBackendPool.Backend backend) {
+        return response == null ? null : response.withBackend(backend.url());
+    }
+
+    private RuntimeException toLlmException(int status, Exception cause) {
+        if (status == 409) {
+            return new LlmBusyException("LLM API busy");
+        }
+        if (status == 422) {
+            return new LlmInvalidRequestException("Invalid LLM request");
+        }
+        return new LlmServiceException("LLM API error", cause);
+    }
 }
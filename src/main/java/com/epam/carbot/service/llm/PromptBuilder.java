@@ -2,16 +2,75 @@ package com.epam.carbot.service.llm;
 
 import com.epam.carbot.domain.Memory;
 import com.epam.carbot.dto.chat.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import tools.jackson.core.JsonGenerator;
 import tools.jackson.databind.ObjectMapper;
 
+import java.io.Writer;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
+/**
+ * Assembles prompts from templates parsed once: literal parts are appended as they are and
+ * JSON context is streamed straight into the output instead of going through intermediate
+ * strings and {@link String#formatted}.
+ */
 @Component
 public class PromptBuilder {
 
+    /** How many latest messages callers offer; {@link #historyWindow} picks what fits the budget. */
+    public static final int HISTORY_SCAN = 40;
+
+    // {"author":"...","text":"..."} и разделитель сверх самого текста
+    private static final int MESSAGE_OVERHEAD_TOKENS = 8;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // «Привет!» и «привет» — один и тот же вопрос; «?» оставляем, он меняет смысл
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s.!…)]+$");
+
+    private static final String FULL_TEMPLATE = """
+            SYSTEM:
+            {{system}}
+
+            Контекст (READ-ONLY):
+            memory={{memory}}
+            missingFields={{missing-fields}}
+            pendingField={{pending-field}}
+            intent={{intent}}
+            earlierTurns={{earlier-turns}}
+            historyWindow={{history-window}}
+
+            Сообщение пользователя:
+            {{message}}
+            """;
+
+    private static final String DELTA_TEMPLATE = """
+            Контекст (READ-ONLY):
+            memory={{memory}}
+            missingFields={{missing-fields}}
+            pendingField={{pending-field}}
+            intent={{intent}}
+
+            Сообщение пользователя:
+            {{message}}
+            """;
+
     private final ObjectMapper mapper = new ObjectMapper();
+    private final int historyTokenBudget;
+
+    // шаблоны разбираются один раз; полный — на каждый системный промпт, их единицы
+    private final Map<String, PromptTemplate<Slot>> fullTemplates = new ConcurrentHashMap<>();
+    private final PromptTemplate<Slot> fullTemplate = PromptTemplate.compile(FULL_TEMPLATE, Slot.class);
+    private final PromptTemplate<Slot> deltaTemplate = PromptTemplate.compile(DELTA_TEMPLATE, Slot.class);
+
+    public PromptBuilder(@Value("${llm.prompt.history-token-budget:600}") int historyTokenBudget) {
+        this.historyTokenBudget = Math.max(0, historyTokenBudget);
+    }
 
     public String build(
             String systemPrompt,
@@ -22,45 +81,178 @@ public class PromptBuilder {
             List<ChatMessage> recentHistory,
             String message
     ) {
-        String memoryJson;
-        String missingJson;
-        String historyJson;
-        try {
-            memoryJson = mapper.writeValueAsString(memory);
-            missingJson = mapper.writeValueAsString(missingFields);
-            historyJson = mapper.writeValueAsString(toHistoryPayload(recentHistory));
-        } catch (Exception e) {
-            memoryJson = "null";
-            missingJson = "[]";
-            historyJson = "[]";
-        }
+        List<ChatMessage> window = historyWindow(recentHistory);
+        return fullTemplates.computeIfAbsent(String.valueOf(systemPrompt), this::compileFull)
+                .render((slot, out) -> writeSlot(slot, out, memory, missingFields, pendingField, intent, window, message));
+    }
 
-        return """
-                SYSTEM:
-                %s
+    /**
+     * Prompt for a turn sent into an existing sidecar chat: the system prompt and earlier
+     * turns are already there, so only the current context and message are sent.
+     */
+    public String buildDelta(
+            Memory memory,
+            List<String> missingFields,
+            String pendingField,
+            String intent,
+            String message
+    ) {
+        return deltaTemplate.render((slot, out) -> writeSlot(slot, out, memory, missingFields, pendingField, intent, List.of(), message));
+    }
 
-                Контекст (READ-ONLY):
-                memory=%s
-                missingFields=%s
-                pendingField=%s
-                intent=%s
-                historyWindow=%s
+    /**
+     * Canonical text of what decides the answer to a turn, for the response cache: memory,
+     * missing fields, pending field, intent and the message with case, spacing and trailing
+     * punctuation normalized. History and the greeting are left out on purpose, so the same
+     * question on the same memory matches across sessions.
+     */
+    public String stateKey(
+            Memory memory,
+            List<String> missingFields,
+            String pendingField,
+            String intent,
+            String message
+    ) {
+        return buildDelta(memory, missingFields, pendingField, intent, normalizeMessage(message));
+    }
 
-                Сообщение пользователя:
-                %s
-                """.formatted(systemPrompt, memoryJson, missingJson, pendingField, intent, historyJson, message);
+    /**
+     * The newest messages whose estimated tokens fit into the history budget, oldest first.
+     */
+    public List<ChatMessage> historyWindow(List<ChatMessage> recentHistory) {
+        return historyWindow(recentHistory, 0);
     }
 
-    private List<Map<String, String>> toHistoryPayload(List<ChatMessage> recentHistory) {
+    /** Same as {@link #historyWindow(List)} with {@code reserveTokens} of the budget kept free. */
+    public List<ChatMessage> historyWindow(List<ChatMessage> recentHistory, int reserveTokens) {
         if (recentHistory == null || recentHistory.isEmpty()) {
             return List.of();
         }
 
-        return recentHistory.stream()
-                .map(msg -> Map.of(
-                        "author", msg.author() == null ? "" : msg.author(),
-                        "text", msg.text() == null ? "" : msg.text()
-                ))
-                .toList();
+        int budget = Math.max(0, historyTokenBudget - reserveTokens);
+        int used = 0;
+        int from = recentHistory.size();
+        while (from > 0) {
+            int cost = recentHistory.get(from - 1).tokens() + MESSAGE_OVERHEAD_TOKENS;
+            if (used + cost > budget) {
+                break;
+            }
+            used += cost;
+            from--;
+        }
+        return recentHistory.subList(from, recentHistory.size());
+    }
+
+    private static String normalizeMessage(String message) {
+        if (message == null) {
+            return "";
+        }
+        String text = WHITESPACE.matcher(message.strip().toLowerCase(Locale.ROOT).replace('ё', 'е')).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(text).replaceAll("");
+    }
+
+    private PromptTemplate<Slot> compileFull(String systemPrompt) {
+        // системный промпт становится частью неизменного префикса шаблона
+        return fullTemplate.bind(Slot.SYSTEM, systemPrompt);
+    }
+
+    private void writeSlot(
+            Slot slot,
+            StringBuilder out,
+            Memory memory,
+            List<String> missingFields,
+            String pendingField,
+            String intent,
+            List<ChatMessage> window,
+            String message
+    ) {
+        switch (slot) {
+            case SYSTEM -> {
+                // подставлен в литералы при компиляции шаблона, см. compileFull
+            }
+            case MEMORY -> writeJson(out, "null", g -> g.writePOJO(memory));
+            case MISSING_FIELDS -> writeJson(out, "[]", g -> {
+                if (missingFields == null) {
+                    g.writeNull();
+                    return;
+                }
+                g.writeStartArray();
+                for (String field : missingFields) {
+                    g.writeString(field);
+                }
+                g.writeEndArray();
+            });
+            case PENDING_FIELD -> out.append(pendingField);
+            case INTENT -> out.append(intent);
+            case EARLIER_TURNS -> writeJson(out, "null", g -> {
+                if (memory == null || memory.digest() == null) {
+                    g.writeNull();
+                } else {
+                    g.writeString(memory.digest());
+                }
+            });
+            case HISTORY_WINDOW -> writeJson(out, "[]", g -> {
+                g.writeStartArray();
+                for (ChatMessage m : window) {
+                    g.writeStartObject();
+                    g.writeName("author");
+                    g.writeString(m.author() == null ? "" : m.author());
+                    g.writeName("text");
+                    g.writeString(m.text() == null ? "" : m.text());
+                    g.writeEndObject();
+                }
+                g.writeEndArray();
+            });
+            case MESSAGE -> out.append(message);
+        }
+    }
+
+    /** Streams one JSON value into the prompt; on failure the partial output is replaced by {@code fallback}. */
+    private void writeJson(StringBuilder out, String fallback, Consumer<JsonGenerator> value) {
+        int mark = out.length();
+        try (JsonGenerator generator = mapper.createGenerator(new StringBuilderWriter(out))) {
+            value.accept(generator);
+        } catch (RuntimeException e) {
+            // не только JacksonException: сериализатор POJO может бросить что угодно
+            out.setLength(mark);
+            out.append(fallback);
+        }
+    }
+
+    private enum Slot {
+        SYSTEM, MEMORY, MISSING_FIELDS, PENDING_FIELD, INTENT, EARLIER_TURNS, HISTORY_WINDOW, MESSAGE
+    }
+
+    /** Writer over the prompt buffer, without the locking and copying of {@link java.io.StringWriter}. */
+    private static final class StringBuilderWriter extends Writer {
+
+        private final StringBuilder out;
+
+        StringBuilderWriter(StringBuilder out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            out.append(buf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            out.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            out.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
     }
 }
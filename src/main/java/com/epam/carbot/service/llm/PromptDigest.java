@@ -0,0 +1,65 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of everything that determines the model output for a request. The prompt is a
+ * deterministic rendering of memory, missing fields, intent, history and message,
+ * so equal digests mean equal {@link PromptBuilder} inputs.
+ */
+final class PromptDigest {
+
+    // код ChatMode.INCOGNITO; слой LLM знает режимы только по строке запроса
+    static final String INCOGNITO_MODE = "incognito";
+
+    private PromptDigest() {
+    }
+
+    /** A one-off incognito request: its answer depends on nothing but the request itself. */
+    static boolean isStateless(GenerateRequest request) {
+        return INCOGNITO_MODE.equals(request.chatMode()) && request.chatUrl() == null;
+    }
+
+    static String of(GenerateRequest request) {
+        MessageDigest digest = sha256();
+        update(digest, request.chatMode());
+        update(digest, request.chatUrl());
+        update(digest, request.prompt());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Key of the response cache: the dialog state when the request carries one, so the same
+     * question on the same memory matches whatever history and greeting surround it; the whole
+     * request otherwise.
+     */
+    static String cacheKey(GenerateRequest request) {
+        if (request.cacheKey() == null) {
+            return of(request);
+        }
+        MessageDigest digest = sha256();
+        update(digest, request.chatMode());
+        update(digest, request.cacheKey());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
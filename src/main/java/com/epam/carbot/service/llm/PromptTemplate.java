@@ -0,0 +1,91 @@
+package com.epam.carbot.service.llm;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prompt text split once into literal parts and {@code {{slot}}} placeholders. Rendering
+ * appends the literals as they are and lets the caller write each slot straight into the
+ * output, which is presized from the previous render so it never grows while filling.
+ */
+final class PromptTemplate<S extends Enum<S>> {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String[] literals;
+    private final S[] slots;
+    private final int literalLength;
+    private final AtomicInteger sizeHint = new AtomicInteger();
+
+    private PromptTemplate(String[] literals, S[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <S extends Enum<S>> PromptTemplate<S> compile(String text, Class<S> slotType) {
+        List<String> literals = new ArrayList<>();
+        List<S> slots = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = text.indexOf(OPEN, from)) >= 0) {
+            int close = text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed slot at " + open);
+            }
+            literals.add(text.substring(from, open));
+            String name = text.substring(open + OPEN.length(), close).strip().replace('-', '_');
+            slots.add(Enum.valueOf(slotType, name.toUpperCase(Locale.ROOT)));
+            from = close + CLOSE.length();
+        }
+        literals.add(text.substring(from));
+
+        S[] slotArray = (S[]) Array.newInstance(slotType, slots.size());
+        return new PromptTemplate<>(literals.toArray(String[]::new), slots.toArray(slotArray));
+    }
+
+    /** Copy of this template with every {@code slot} replaced by a constant, merged into the literals around it. */
+    PromptTemplate<S> bind(S slot, String value) {
+        List<String> boundLiterals = new ArrayList<>();
+        List<S> boundSlots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == slot) {
+                literal.append(value).append(literals[i + 1]);
+            } else {
+                boundLiterals.add(literal.toString());
+                boundSlots.add(slots[i]);
+                literal.setLength(0);
+                literal.append(literals[i + 1]);
+            }
+        }
+        boundLiterals.add(literal.toString());
+        return new PromptTemplate<>(boundLiterals.toArray(String[]::new), boundSlots.toArray(Arrays.copyOf(slots, 0)));
+    }
+
+    String render(SlotWriter<S> writer) {
+        StringBuilder out = new StringBuilder(Math.max(sizeHint.get(), literalLength) + 64);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            writer.write(slots[i], out);
+        }
+        out.append(literals[slots.length]);
+        sizeHint.set(out.length());
+        return out.toString();
+    }
+
+    @FunctionalInterface
+    interface SlotWriter<S> {
+        void write(S slot, StringBuilder out);
+    }
+}
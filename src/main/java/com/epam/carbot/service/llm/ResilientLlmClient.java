@@ -0,0 +1,360 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient sidecar failures (5xx, I/O) with exponential backoff and full jitter.
+ * 409 busy is not retried here: the backend pool already fails over and the admission queue
+ * decides whether to wait. Retries and hedges draw from a token bucket that every first attempt
+ * refills by {@code budgetRatio}, so under a real outage extra load stays a bounded fraction of
+ * traffic. With hedging on, a stateless call that has produced nothing past the recent p95
+ * (time to first chunk for streams) gets a second copy; the copy that answers first wins and
+ * the other one is cancelled.
+ */
+public class ResilientLlmClient implements LlmClient, AutoCloseable {
+
+    private static final double MAX_BUDGET_TOKENS = 10;
+    private static final int LATENCY_WINDOW = 128;
+    private static final int PERCENTILE_REFRESH = 16;
+
+    private static final int PRIMARY = 0;
+    private static final int HEDGE = 1;
+    private static final int NONE = -1;
+
+    private final LlmClient delegate;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double budgetRatio;
+    private final boolean hedgeEnabled;
+    private final int hedgeMinSamples;
+    private final ExecutorService hedgeExecutor;
+
+    private double budgetTokens = MAX_BUDGET_TOKENS;
+
+    // generate() — время всего ответа, generateStream() — время до первого куска
+    private final LatencyWindow callLatency = new LatencyWindow();
+    private final LatencyWindow firstChunkLatency = new LatencyWindow();
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    public ResilientLlmClient(LlmClient delegate, int maxAttempts, Duration baseBackoff, Duration maxBackoff,
+                              double budgetRatio, boolean hedgeEnabled, int hedgeMinSamples) {
+        this.delegate = delegate;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = Math.max(1, baseBackoff.toMillis());
+        this.maxBackoffMillis = Math.max(baseBackoffMillis, maxBackoff.toMillis());
+        this.budgetRatio = budgetRatio;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinSamples = Math.clamp(hedgeMinSamples, 1, LATENCY_WINDOW);
+        this.hedgeExecutor = hedgeEnabled
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-hedge-", 0).factory())
+                : null;
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest request) {
+        if (hedgeEnabled && isStateless(request) && callLatency.p95() > 0) {
+            return hedged(callLatency.p95(), null, chunks -> callWithRetries(request));
+        }
+        return callWithRetries(request);
+    }
+
+    @Override
+    public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        if (hedgeEnabled && isStateless(request) && firstChunkLatency.p95() > 0) {
+            return hedged(firstChunkLatency.p95(), onChunk, chunks -> streamWithRetries(request, chunks));
+        }
+        return streamWithRetries(request, onChunk);
+    }
+
+    public long retryCount() {
+        return retries.get();
+    }
+
+    public long budgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    public long hedgeCount() {
+        return hedges.get();
+    }
+
+    public long hedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public void close() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private GenerateResponse callWithRetries(GenerateRequest request) {
+        return withRetries(() -> {
+            long start = System.nanoTime();
+            GenerateResponse response = delegate.generate(request);
+            recordLatency(callLatency, System.nanoTime() - start);
+            return response;
+        }, () -> true);
+    }
+
+    private GenerateResponse streamWithRetries(GenerateRequest request, Consumer<String> onChunk) {
+        // после первого отданного куска повтор задублирует текст у пользователя
+        AtomicBoolean emitted = new AtomicBoolean();
+        return withRetries(() -> {
+            long start = System.nanoTime();
+            return delegate.generateStream(request, chunk -> {
+                if (!emitted.getAndSet(true)) {
+                    recordLatency(firstChunkLatency, System.nanoTime() - start);
+                }
+                onChunk.accept(chunk);
+            });
+        }, () -> !emitted.get());
+    }
+
+    private GenerateResponse withRetries(Supplier<GenerateResponse> call, Supplier<Boolean> retryable) {
+        deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (LlmServiceException e) {
+                // прерванную копию хеджа не повторяем: ответ уже отдала другая
+                if (attempt >= maxAttempts || !retryable.get() || LlmBackendPool.isAbandoned(e)) {
+                    throw e;
+                }
+                if (!withdraw()) {
+                    budgetExhausted.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    /**
+     * Runs the call and, if it has neither answered nor streamed anything within {@code thresholdNanos},
+     * a second copy. The copy that streams first (or completes first) owns the answer; the other is cancelled.
+     */
+    private GenerateResponse hedged(long thresholdNanos, Consumer<String> onChunk, Function<Consumer<String>, GenerateResponse> call) {
+        Race race = new Race(onChunk);
+        CompletableFuture<GenerateResponse> primary = race.start(PRIMARY, call);
+        try {
+            if (race.awaitProgress(thresholdNanos) || primary.isDone() || !withdraw()) {
+                return join(primary);
+            }
+        } catch (InterruptedException e) {
+            race.cancelAll();
+            Thread.currentThread().interrupt();
+            throw new LlmServiceException("Interrupted while waiting for LLM", e);
+        }
+
+        hedges.incrementAndGet();
+        CompletableFuture<GenerateResponse> hedge = race.start(HEDGE, call);
+        CompletableFuture<GenerateResponse> first = new CompletableFuture<>();
+        primary.whenComplete((response, error) -> race.settle(first, PRIMARY, response, error, hedge));
+        hedge.whenComplete((response, error) -> {
+            if (race.settle(first, HEDGE, response, error, primary)) {
+                hedgeWins.incrementAndGet();
+            }
+        });
+        try {
+            return join(first);
+        } finally {
+            race.cancelAll();
+        }
+    }
+
+    private GenerateResponse join(CompletableFuture<GenerateResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmServiceException("Interrupted while waiting for LLM", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                ? e.getCause().getCause()
+                : e.getCause();
+        return cause instanceof RuntimeException runtime ? runtime : new LlmServiceException("LLM API error", e);
+    }
+
+    private boolean isStateless(GenerateRequest request) {
+        return PromptDigest.isStateless(request);
+    }
+
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private synchronized void deposit() {
+        budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+
+    private void recordLatency(LatencyWindow window, long nanos) {
+        if (hedgeEnabled) {
+            window.record(nanos, hedgeMinSamples);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmServiceException("Interrupted during LLM retry backoff", e);
+        }
+    }
+
+    /** Recent latencies and their p95, recomputed every few samples. */
+    private static final class LatencyWindow {
+
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int count;
+        private volatile long p95Nanos;
+
+        synchronized void record(long nanos, int minSamples) {
+            latencies[count % LATENCY_WINDOW] = nanos;
+            count++;
+            if (count >= minSamples && count % PERCENTILE_REFRESH == 0) {
+                long[] window = Arrays.copyOf(latencies, Math.min(count, LATENCY_WINDOW));
+                Arrays.sort(window);
+                p95Nanos = window[(int) Math.ceil(window.length * 0.95) - 1];
+            }
+        }
+
+        long p95() {
+            return p95Nanos;
+        }
+    }
+
+    /**
+     * Two copies of one call competing for the caller. The first copy to stream a chunk or to
+     * complete successfully becomes the owner; only its chunks reach the caller, and the other
+     * copy is interrupted.
+     */
+    private final class Race {
+
+        private final Consumer<String> onChunk;
+        private final AtomicInteger owner = new AtomicInteger(NONE);
+        // открывается, когда у гонки появился владелец или первая копия завершилась
+        private final CountDownLatch progress = new CountDownLatch(1);
+        private final AtomicReferenceArray<Future<?>> tasks = new AtomicReferenceArray<>(2);
+
+        Race(Consumer<String> onChunk) {
+            this.onChunk = onChunk;
+        }
+
+        CompletableFuture<GenerateResponse> start(int copy, Function<Consumer<String>, GenerateResponse> call) {
+            CompletableFuture<GenerateResponse> result = new CompletableFuture<>();
+            Consumer<String> chunks = chunk -> {
+                if (!claim(copy)) {
+                    throw new CancellationException("lost the hedge race");
+                }
+                if (onChunk != null) {
+                    onChunk.accept(chunk);
+                }
+            };
+            tasks.set(copy, hedgeExecutor.submit(() -> {
+                try {
+                    GenerateResponse response = call.apply(chunks);
+                    claim(copy);
+                    result.complete(response);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    progress.countDown();
+                }
+            }));
+            int current = owner.get();
+            if (current != NONE && current != copy) {
+                cancel(copy);
+            }
+            return result;
+        }
+
+        boolean awaitProgress(long nanos) throws InterruptedException {
+            return progress.await(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Completes {@code first} with the owner's outcome, or with the error once both copies
+         * failed without producing anything. Returns {@code true} if this copy's response is the one the caller gets.
+         */
+        boolean settle(CompletableFuture<GenerateResponse> first, int copy, GenerateResponse response, Throwable error,
+                       CompletableFuture<GenerateResponse> other) {
+            if (error == null) {
+                return claim(copy) && first.complete(response);
+            }
+            int current = owner.get();
+            if (current == copy || (current == NONE && other.isDone())) {
+                first.completeExceptionally(error);
+            }
+            return false;
+        }
+
+        void cancelAll() {
+            int current = owner.get();
+            for (int copy = PRIMARY; copy <= HEDGE; copy++) {
+                if (copy != current) {
+                    cancel(copy);
+                }
+            }
+        }
+
+        private boolean claim(int copy) {
+            if (owner.compareAndSet(NONE, copy)) {
+                progress.countDown();
+                cancel(copy == PRIMARY ? HEDGE : PRIMARY);
+                return true;
+            }
+            return owner.get() == copy;
+        }
+
+        private void cancel(int copy) {
+            Future<?> task = tasks.get(copy);
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+}
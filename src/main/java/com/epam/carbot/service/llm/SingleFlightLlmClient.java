@@ -0,0 +1,190 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collapses concurrent identical requests into one upstream call. A request whose
+ * {@link PromptDigest} matches a call still in flight waits for that call and gets the same
+ * response; a streaming follower first receives the text streamed so far, then the rest live.
+ * Only stateless (incognito) requests are shared.
+ */
+public class SingleFlightLlmClient implements LlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlightLlmClient.class);
+
+    private final LlmClient delegate;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    public SingleFlightLlmClient(LlmClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public GenerateResponse generate(GenerateRequest request) {
+        return isShareable(request) ? execute(request, null) : delegate.generate(request);
+    }
+
+    @Override
+    public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+        return isShareable(request) ? execute(request, onChunk) : delegate.generateStream(request, onChunk);
+    }
+
+    public long collapsedCount() {
+        return collapsed.get();
+    }
+
+    public int inFlightCount() {
+        return flights.size();
+    }
+
+    private GenerateResponse execute(GenerateRequest request, Consumer<String> onChunk) {
+        String key = PromptDigest.of(request);
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            return existing.join(onChunk);
+        }
+
+        if (onChunk != null) {
+            flight.subscribe(onChunk);
+        }
+        try {
+            GenerateResponse response = onChunk == null
+                    ? delegate.generate(request)
+                    : delegate.generateStream(request, flight::emit);
+            flights.remove(key, flight);
+            flight.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.fail(e);
+            throw e;
+        }
+    }
+
+    private boolean isShareable(GenerateRequest request) {
+        return PromptDigest.isStateless(request);
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<GenerateResponse> result = new CompletableFuture<>();
+        private final StringBuilder emitted = new StringBuilder();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private boolean finished;
+        private GenerateResponse response;
+
+        // состояние меняется под замком рейса, а подписчики вызываются уже без него:
+        // медленный или упавший подписчик не держит ни ведущего, ни остальных
+        private void subscribe(Consumer<String> onChunk) {
+            Subscriber subscriber = new Subscriber(onChunk);
+            // замок подписчика берётся первым: живые куски не обгонят уже накопленный текст
+            synchronized (subscriber) {
+                String replay;
+                synchronized (this) {
+                    replay = emitted.isEmpty() ? null : emitted.toString();
+                    if (finished) {
+                        // ведущий звал generate без стрима: отдаём текст целиком, как делает LlmClient по умолчанию
+                        if (replay == null && response != null) {
+                            replay = response.text();
+                        }
+                    } else {
+                        subscribers.add(subscriber);
+                    }
+                }
+                if (replay != null) {
+                    subscriber.accept(replay);
+                }
+            }
+        }
+
+        private void emit(String chunk) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                emitted.append(chunk);
+                targets = List.copyOf(subscribers);
+            }
+            deliver(targets, chunk);
+        }
+
+        private void complete(GenerateResponse response) {
+            List<Subscriber> targets;
+            boolean streamed;
+            synchronized (this) {
+                finished = true;
+                this.response = response;
+                streamed = !emitted.isEmpty();
+                targets = List.copyOf(subscribers);
+                subscribers.clear();
+            }
+            if (!streamed && response != null && response.text() != null) {
+                deliver(targets, response.text());
+            }
+            // ведомые возвращаются только после того, как получили текст
+            result.complete(response);
+        }
+
+        private void fail(RuntimeException error) {
+            synchronized (this) {
+                finished = true;
+                subscribers.clear();
+            }
+            result.completeExceptionally(error);
+        }
+
+        private static void deliver(List<Subscriber> targets, String chunk) {
+            for (Subscriber subscriber : targets) {
+                synchronized (subscriber) {
+                    subscriber.accept(chunk);
+                }
+            }
+        }
+
+        private GenerateResponse join(Consumer<String> onChunk) {
+            if (onChunk != null) {
+                subscribe(onChunk);
+            }
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+    }
+
+    /** One caller's chunk consumer; after it throws once it gets nothing more, the call itself goes on. */
+    private static final class Subscriber {
+        private final Consumer<String> onChunk;
+        private boolean failed;
+
+        private Subscriber(Consumer<String> onChunk) {
+            this.onChunk = onChunk;
+        }
+
+        // вызывается под замком этого подписчика
+        private void accept(String chunk) {
+            if (failed) {
+                return;
+            }
+            try {
+                onChunk.accept(chunk);
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.warn("single-flight subscriber failed, it gets no more chunks", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.epam.carbot.service.memory;
+
+import com.epam.carbot.domain.Memory;
+import com.epam.carbot.dto.chat.ChatMessage;
+import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.llm.PromptBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Folds turns that dropped out of the prompt history window into {@link Memory#digest()}:
+ * one shortened line per message, oldest lines dropped once the digest exceeds its limit.
+ * Extractive, so no LLM call; runs in the background after the reply has been shown.
+ * The boundary is computed with {@code headroomTokens} of the window budget kept free: the
+ * next turn adds a message and pushes the prompt window forward, and what it pushes out
+ * must already be in the digest.
+ */
+@Component
+public class ConversationCompactor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationCompactor.class);
+
+    private static final int MAX_LINE_CHARS = 160;
+    private static final int MIN_SENTENCE_CHARS = 20;
+
+    private final ChatSessionService sessions;
+    private final MemoryStore memoryStore;
+    private final PromptBuilder promptBuilder;
+    private final int maxDigestChars;
+    private final int headroomTokens;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("memory-compactor-", 0).factory());
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong folded = new AtomicLong();
+
+    public ConversationCompactor(
+            ChatSessionService sessions,
+            MemoryStore memoryStore,
+            PromptBuilder promptBuilder,
+            @Value("${memory.digest.max-chars:1500}") int maxDigestChars,
+            @Value("${memory.digest.headroom-tokens:100}") int headroomTokens
+    ) {
+        this.sessions = sessions;
+        this.memoryStore = memoryStore;
+        this.promptBuilder = promptBuilder;
+        this.maxDigestChars = Math.max(MAX_LINE_CHARS, maxDigestChars);
+        this.headroomTokens = Math.max(0, headroomTokens);
+    }
+
+    public void compactAsync(String sessionId) {
+        // одной сессии хватает одного прохода, следующий ответ запустит новый
+        if (!running.add(sessionId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                compact(sessionId);
+            } catch (RuntimeException e) {
+                logger.warn("digest compaction failed for session={}", sessionId, e);
+            } finally {
+                running.remove(sessionId);
+            }
+        });
+    }
+
+    public long foldedMessageCount() {
+        return folded.get();
+    }
+
+    void compact(String sessionId) {
+        long end = sessions.historySequence(sessionId);
+        List<ChatMessage> recent = sessions.getRecentHistory(sessionId, PromptBuilder.HISTORY_SCAN);
+        long windowStart = end - promptBuilder.historyWindow(recent, headroomTokens).size();
+        if (sessions.historySequence(sessionId) != end) {
+            // параллельный ход дописал историю между чтениями — граница неточна, посчитает следующий проход
+            return;
+        }
+        long from = sessions.digestedSequence(sessionId);
+        if (from >= windowStart) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        List<ChatMessage> dropped = sessions.getHistoryRange(sessionId, from, windowStart);
+        for (ChatMessage m : dropped) {
+            appendLine(lines, m);
+        }
+        if (!lines.isEmpty()) {
+            memoryStore.compute(sessionId, current -> {
+                Memory base = current != null ? current : new Memory(null, null, null, null, "");
+                String digest = base.digest() == null ? lines.toString() : base.digest() + "\n" + lines;
+                return base.withDigest(trim(digest));
+            });
+            folded.addAndGet(dropped.size());
+        }
+        sessions.setDigestedSequence(sessionId, windowStart);
+    }
+
+    private static void appendLine(StringBuilder lines, ChatMessage m) {
+        String text = m.text() == null ? "" : m.text().strip();
+        if (text.isEmpty()) {
+            return;
+        }
+        if (!lines.isEmpty()) {
+            lines.append('\n');
+        }
+        lines.append(m.fromUser() ? "Пользователь: " : "Бот: ").append(firstSentence(text));
+    }
+
+    private static String firstSentence(String text) {
+        int limit = Math.min(text.length(), MAX_LINE_CHARS);
+        for (int i = MIN_SENTENCE_CHARS; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '!' || c == '?' || c == '\n') {
+                return text.substring(0, i + 1).replace('\n', ' ').strip();
+            }
+        }
+        String head = text.substring(0, limit).replace('\n', ' ');
+        return limit < text.length() ? head + "…" : head;
+    }
+
+    private String trim(String digest) {
+        if (digest.length() <= maxDigestChars) {
+            return digest;
+        }
+        int cut = digest.indexOf('\n', digest.length() - maxDigestChars);
+        return cut < 0 ? digest.substring(digest.length() - maxDigestChars) : digest.substring(cut + 1);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -1,30 +1,72 @@
 package com.epam.carbot.service.memory;
 
 import com.epam.carbot.domain.Memory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
+/**
+ * Memory kept on heap. {@code get}/{@code put} only touch the {@link ConcurrentHashMap};
+ * a background sweeper drops expired entries, and once the map grows past
+ * {@code maxEntries} the least recently used tenth is evicted off the request path.
+ */
 @Component
-public class InMemoryMemoryStore implements MemoryStore {
-    private static final Duration DEFAULT_TTL = Duration.ofHours(24);
+@ConditionalOnProperty(name = "memory.store", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryMemoryStore implements MemoryStore, DisposableBean {
 
-    private final Duration ttl;
+    private final long ttlMillis;
+    private final int maxEntries;
     private final Clock clock;
+    private final ScheduledExecutorService sweeper;
 
     private final Map<String, MemoryEntry> memoryByUser = new ConcurrentHashMap<>();
 
-    public InMemoryMemoryStore() {
-        this(DEFAULT_TTL, Clock.systemUTC());
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    @Autowired
+    public InMemoryMemoryStore(
+            @Value("${memory.ttl:24h}") Duration ttl,
+            @Value("${memory.max-entries:100000}") int maxEntries,
+            @Value("${memory.sweep-interval:1m}") Duration sweepInterval
+    ) {
+        this(ttl, maxEntries, sweepInterval, Clock.systemUTC());
     }
 
     InMemoryMemoryStore(Duration ttl, Clock clock) {
-        this.ttl = ttl;
+        this(ttl, Integer.MAX_VALUE, null, clock);
+    }
+
+    InMemoryMemoryStore(Duration ttl, int maxEntries, Duration sweepInterval, Clock clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = Math.max(1, maxEntries);
         this.clock = clock;
+
+        if (sweepInterval == null) {
+            // без фонового потока вытеснение идёт прямо в put, так удобнее в тестах
+            this.sweeper = null;
+        } else {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("memory-sweeper").daemon().factory());
+            long interval = Math.max(1, sweepInterval.toMillis());
+            sweeper.scheduleWithFixedDelay(this::sweepExpired, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -34,22 +76,118 @@ public class InMemoryMemoryStore implements MemoryStore {
             return null;
         }
 
-        if (entry.isExpired(ttl, clock.instant())) {
-            memoryByUser.remove(username, entry);
+        long now = clock.millis();
+        if (entry.isExpired(ttlMillis, now)) {
+            if (memoryByUser.remove(username, entry)) {
+                expired.incrementAndGet();
+            }
             return null;
         }
 
-        return entry.memory();
+        entry.lastAccess = now;
+        return entry.memory;
     }
 
     @Override
     public void put(String username, Memory memory) {
-        memoryByUser.put(username, new MemoryEntry(memory, clock.instant()));
+        memoryByUser.put(username, new MemoryEntry(memory, clock.millis()));
+        if (memoryByUser.size() > maxEntries) {
+            scheduleEviction();
+        }
+    }
+
+    @Override
+    public Memory compute(String username, UnaryOperator<Memory> update) {
+        MemoryEntry next = memoryByUser.compute(username, (key, entry) -> {
+            long now = clock.millis();
+            Memory current = entry == null || entry.isExpired(ttlMillis, now) ? null : entry.memory;
+            Memory updated = update.apply(current);
+            return updated == null ? null : new MemoryEntry(updated, now);
+        });
+        if (memoryByUser.size() > maxEntries) {
+            scheduleEviction();
+        }
+        return next == null ? null : next.memory;
+    }
+
+    public int size() {
+        return memoryByUser.size();
+    }
+
+    public long expiredCount() {
+        return expired.get();
+    }
+
+    public long evictedCount() {
+        return evicted.get();
+    }
+
+    void sweepExpired() {
+        long now = clock.millis();
+        memoryByUser.forEach((key, entry) -> {
+            if (entry.isExpired(ttlMillis, now) && memoryByUser.remove(key, entry)) {
+                expired.incrementAndGet();
+            }
+        });
     }
 
-    private record MemoryEntry(Memory memory, Instant updatedAt) {
-        private boolean isExpired(Duration ttl, Instant now) {
-            return updatedAt.plus(ttl).isBefore(now);
+    void evictOverflow() {
+        int target = maxEntries - maxEntries / 10;
+        int excess = memoryByUser.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+
+        List<Map.Entry<String, MemoryEntry>> entries = new ArrayList<>(memoryByUser.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        for (int i = 0; i < entries.size() && excess > 0; i++) {
+            Map.Entry<String, MemoryEntry> entry = entries.get(i);
+            if (memoryByUser.remove(entry.getKey(), entry.getValue())) {
+                evicted.incrementAndGet();
+                excess--;
+            }
+        }
+    }
+
+    private void scheduleEviction() {
+        if (!evictionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        Runnable eviction = () -> {
+            try {
+                evictOverflow();
+            } finally {
+                evictionScheduled.set(false);
+            }
+        };
+        if (sweeper == null) {
+            eviction.run();
+        } else {
+            sweeper.execute(eviction);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private static final class MemoryEntry {
+        private final Memory memory;
+        private final long updatedAt;
+        private volatile long lastAccess;
+
+        private MemoryEntry(Memory memory, long updatedAt) {
+            this.memory = memory;
+            this.updatedAt = updatedAt;
+            this.lastAccess = updatedAt;
+        }
+
+        private boolean isExpired(long ttlMillis, long now) {
+            return updatedAt + ttlMillis < now;
         }
     }
 }
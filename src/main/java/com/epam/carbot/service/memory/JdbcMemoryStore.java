@@ -0,0 +1,192 @@
+package com.epam.carbot.service.memory;
+
+import com.epam.carbot.domain.Memory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Memory persisted in the bundled H2 so collected fields survive restarts. Reads are served
+ * from an in-process {@link InMemoryMemoryStore}; writes land there immediately and are
+ * coalesced per session, then flushed in JDBC batches by a background writer.
+ */
+@Component
+@ConditionalOnProperty(name = "memory.store", havingValue = "jdbc")
+public class JdbcMemoryStore implements MemoryStore, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcMemoryStore.class);
+
+    private static final String SELECT = """
+            SELECT budget, country, purpose, body_type, summary, digest
+            FROM chat_memory
+            WHERE session_id = ? AND updated_at >= ?
+            """;
+    private static final String UPSERT = """
+            MERGE INTO chat_memory (session_id, budget, country, purpose, body_type, summary, digest, updated_at)
+            KEY (session_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    private static final String PURGE = "DELETE FROM chat_memory WHERE updated_at < ?";
+
+    private final JdbcTemplate jdbc;
+    private final Duration ttl;
+    private final Clock clock;
+    private final int batchSize;
+    private final InMemoryMemoryStore cache;
+
+    private final Map<String, Memory> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer;
+
+    @Autowired
+    public JdbcMemoryStore(
+            JdbcTemplate jdbc,
+            @Value("${memory.ttl:24h}") Duration ttl,
+            @Value("${memory.max-entries:100000}") int maxEntries,
+            @Value("${memory.sweep-interval:1m}") Duration sweepInterval,
+            @Value("${memory.jdbc.flush-interval:500ms}") Duration flushInterval,
+            @Value("${memory.jdbc.batch-size:100}") int batchSize
+    ) {
+        this(jdbc, ttl, maxEntries, sweepInterval, flushInterval, batchSize, Clock.systemUTC());
+    }
+
+    JdbcMemoryStore(JdbcTemplate jdbc, Duration ttl, int maxEntries, Duration sweepInterval,
+                    Duration flushInterval, int batchSize, Clock clock) {
+        this.jdbc = jdbc;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.batchSize = Math.max(1, batchSize);
+        this.cache = new InMemoryMemoryStore(ttl, maxEntries, sweepInterval, clock);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("memory-writer").daemon().factory());
+        long interval = Math.max(1, flushInterval.toMillis());
+        writer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        writer.scheduleWithFixedDelay(this::purgeQuietly, 10, 10, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public Memory get(String username) {
+        Memory cached = cache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        Memory unflushed = pending.get(username);
+        if (unflushed != null) {
+            return unflushed;
+        }
+
+        Timestamp notBefore = Timestamp.from(clock.instant().minus(ttl));
+        List<Memory> rows = jdbc.query(SELECT, (rs, rowNum) -> new Memory(
+                rs.getString("budget"),
+                rs.getString("country"),
+                rs.getString("purpose"),
+                rs.getString("body_type"),
+                rs.getString("summary"),
+                rs.getString("digest")
+        ), username, notBefore);
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        Memory loaded = rows.get(0);
+        // пока шёл запрос, параллельный compute мог положить в кеш более новое значение
+        return cache.compute(username, current -> current != null ? current : loaded);
+    }
+
+    @Override
+    public void put(String username, Memory memory) {
+        cache.put(username, memory);
+        pending.put(username, memory);
+    }
+
+    @Override
+    public Memory compute(String username, UnaryOperator<Memory> update) {
+        // get() подтягивает запись из базы в кеш, дальше обновление атомарно в кеше
+        Memory loaded = get(username);
+        return cache.compute(username, current -> {
+            Memory updated = update.apply(current != null ? current : loaded);
+            if (updated != null) {
+                pending.put(username, updated);
+            }
+            return updated;
+        });
+    }
+
+    /** Entries held in the write-through cache. */
+    public int cachedCount() {
+        return cache.size();
+    }
+
+    /** Updates not yet written to the database. */
+    public int pendingWriteCount() {
+        return pending.size();
+    }
+
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.from(clock.instant());
+        List<Map.Entry<String, Memory>> drained = new ArrayList<>(pending.entrySet());
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            for (Map.Entry<String, Memory> entry : drained.subList(from, Math.min(drained.size(), from + batchSize))) {
+                Memory m = entry.getValue();
+                batch.add(new Object[]{entry.getKey(), m.budget(), m.country(), m.purpose(), m.body_type(), m.summary(), m.digest(), now});
+            }
+            jdbc.batchUpdate(UPSERT, batch);
+        }
+
+        // запись, обновлённая во время сброса, останется до следующего прохода
+        for (Map.Entry<String, Memory> entry : drained) {
+            pending.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("memory flush failed, {} sessions pending", pending.size(), e);
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            jdbc.update(PURGE, Timestamp.from(clock.instant().minus(ttl)));
+        } catch (Exception e) {
+            logger.warn("memory purge failed", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        cache.destroy();
+    }
+}
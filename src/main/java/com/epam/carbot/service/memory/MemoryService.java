@@ -27,7 +27,8 @@ public class MemoryService {
                 firstNonBlank(newM.country(), oldM.country()),
                 firstNonBlank(newM.purpose(), oldM.purpose()),
                 firstNonBlank(newM.body_type(), oldM.body_type()),
-                firstNonBlank(newM.summary(), oldM.summary())
+                firstNonBlank(newM.summary(), oldM.summary()),
+                firstNonBlank(newM.digest(), oldM.digest())
         );
 
         return sanitizeNewMemory(merged);
@@ -40,7 +41,8 @@ public class MemoryService {
                 normalizeCountry(m.country()),
                 blankToNull(m.purpose()),
                 normalizeBodyType(m.body_type()),
-                (m.summary() == null ? "" : m.summary().trim())
+                (m.summary() == null ? "" : m.summary().trim()),
+                blankToNull(m.digest())
         );
     }
 
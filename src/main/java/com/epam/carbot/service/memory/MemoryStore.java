@@ -2,8 +2,16 @@ package com.epam.carbot.service.memory;
 
 import com.epam.carbot.domain.Memory;
 
+import java.util.function.UnaryOperator;
+
 public interface MemoryStore {
     Memory get(String username);
 
     void put(String username, Memory memory);
+
+    /**
+     * Atomically replaces the stored memory with {@code update} applied to the current value
+     * ({@code null} if there is none) and returns the result.
+     */
+    Memory compute(String username, UnaryOperator<Memory> update);
 }
@@ -0,0 +1,205 @@
+package com.epam.carbot.service.memory;
+
+import com.epam.carbot.domain.Memory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Map.entry;
+
+/**
+ * Fills {@code budget}, {@code country} and {@code body_type} from short, obvious answers
+ * without asking the LLM. Every value comes with a confidence in {@code [0, 1]}; the caller
+ * decides from which confidence the value is trusted. {@link #extractAll} gives up as soon as
+ * part of the message explains nothing, so data the model would have picked up is not lost.
+ */
+@Component
+public class SlotExtractor {
+
+    private static final Pattern BUDGET = Pattern.compile(
+            "(\\d[\\d\\s]*(?:[.,]\\d+)?)\\s*(млн\\.?|миллион\\p{L}*|тыс\\p{L}*\\.?|(?:k|к)(?!\\p{L}))?\\s*(руб\\p{L}*\\.?|р\\.|₽|usd|\\$|долл\\p{L}*|eur|€|евро|тенге|₸)?",
+            Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
+
+    // основа слова -> каноническое значение; основы до трёх букв сравниваются только целиком
+    private static final Map<String, String> PLACES = Map.ofEntries(
+            entry("росси", "Россия"), entry("рф", "Россия"),
+            entry("германи", "Германия"), entry("польш", "Польша"), entry("франци", "Франция"),
+            entry("итали", "Италия"), entry("испани", "Испания"), entry("сша", "США"), entry("америк", "США"),
+            entry("казахстан", "Казахстан"), entry("беларус", "Беларусь"), entry("белорус", "Беларусь"),
+            entry("грузи", "Грузия"), entry("армени", "Армения"), entry("оаэ", "ОАЭ"), entry("эмират", "ОАЭ"),
+            entry("кита", "Китай"), entry("япони", "Япония"), entry("коре", "Корея"),
+            entry("турци", "Турция"), entry("литв", "Литва"), entry("латви", "Латвия"), entry("эстони", "Эстония"),
+            entry("финлянди", "Финляндия"), entry("чехи", "Чехия"), entry("нидерланд", "Нидерланды"),
+            entry("голланди", "Нидерланды"), entry("москв", "Москва"), entry("петербург", "Санкт-Петербург"),
+            entry("питер", "Санкт-Петербург"), entry("спб", "Санкт-Петербург"), entry("казан", "Казань"),
+            entry("новосибирск", "Новосибирск"), entry("екатеринбург", "Екатеринбург"), entry("минск", "Минск"),
+            entry("алмат", "Алматы"), entry("берлин", "Берлин"), entry("варшав", "Варшава"),
+            entry("тбилиси", "Тбилиси"), entry("ереван", "Ереван"), entry("дуба", "Дубай")
+    );
+
+    private static final Map<String, String> BODY_TYPES = Map.ofEntries(
+            entry("седан", "седан"), entry("хэтчбек", "хэтчбек"), entry("хетчбек", "хэтчбек"),
+            entry("хэтч", "хэтчбек"), entry("хетч", "хэтчбек"), entry("универсал", "универсал"),
+            entry("кроссовер", "кроссовер"), entry("кросовер", "кроссовер"), entry("паркетник", "кроссовер"),
+            entry("внедорожник", "внедорожник"), entry("джип", "внедорожник"), entry("suv", "внедорожник"),
+            entry("купе", "купе"), entry("кабриолет", "кабриолет"), entry("минивэн", "минивэн"),
+            entry("минивен", "минивэн"), entry("пикап", "пикап"), entry("лифтбек", "лифтбек")
+    );
+
+    // 4 цифры без валюты и множителя в этих пределах — скорее год выпуска, чем бюджет
+    private static final int MIN_YEAR = 1950;
+    private static final int MAX_YEAR = 2039;
+
+    private static final List<String> DICTIONARY_FIELDS = List.of("country", "body_type");
+
+    private static final Set<String> FILLER = Set.of(
+            "в", "во", "из", "на", "по", "и", "или", "а", "наверное", "думаю", "хочу", "хотелось", "бы",
+            "планирую", "покупать", "купить", "буду", "скорее", "всего", "лучше", "нужен", "нужна", "нужно",
+            "мне", "я", "город", "страна", "кузов", "тип", "типа", "например", "пожалуйста", "да", "ну",
+            "до", "около", "примерно", "порядка", "максимум", "бюджет"
+    );
+
+    /**
+     * Tries every field of {@code fields} on the message. Returns nothing unless each word of the
+     * message is either one of the found values or filler; a value for a field that is not asked,
+     * a purpose, a year and so on leave the whole message to the model.
+     */
+    public List<SlotValue> extractAll(List<String> fields, String message) {
+        if (fields == null || fields.isEmpty() || message == null || message.isBlank() || message.indexOf('?') >= 0) {
+            return List.of();
+        }
+
+        List<SlotValue> found = new ArrayList<>();
+        String rest = message.trim();
+        if (fields.contains("budget")) {
+            Matcher m = findBudget(rest);
+            if (m != null) {
+                found.add(budgetSlot(m));
+                rest = rest.substring(0, m.start()) + " " + rest.substring(m.end());
+            }
+        }
+        if (rest.chars().anyMatch(Character::isDigit)) {
+            return List.of();
+        }
+
+        List<String> words = words(rest);
+        boolean[] explained = new boolean[words.size()];
+        for (String field : DICTIONARY_FIELDS) {
+            if (!fields.contains(field)) {
+                continue;
+            }
+            Map<String, String> dictionary = "country".equals(field) ? PLACES : BODY_TYPES;
+            String value = null;
+            for (int i = 0; i < words.size(); i++) {
+                String canonical = lookup(words.get(i), dictionary);
+                if (canonical == null) {
+                    continue;
+                }
+                if (value != null && !value.equals(canonical)) {
+                    return List.of();
+                }
+                value = canonical;
+                explained[i] = true;
+            }
+            if (value != null) {
+                found.add(new SlotValue(field, value, 0.95));
+            }
+        }
+
+        for (int i = 0; i < words.size(); i++) {
+            if (!explained[i] && !FILLER.contains(words.get(i))) {
+                return List.of();
+            }
+        }
+        return found;
+    }
+
+    private static Matcher findBudget(String text) {
+        Matcher m = BUDGET.matcher(text);
+        while (m.find()) {
+            if (!isYear(m)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isYear(Matcher m) {
+        if (m.group(2) != null || m.group(3) != null) {
+            return false;
+        }
+        String number = m.group(1).trim();
+        if (number.length() != 4 || countDigits(number) != 4) {
+            return false;
+        }
+        int value = Integer.parseInt(number);
+        return value >= MIN_YEAR && value <= MAX_YEAR;
+    }
+
+    private static SlotValue budgetSlot(Matcher m) {
+        boolean hasMultiplier = m.group(2) != null;
+        boolean hasCurrency = m.group(3) != null;
+        long digits = countDigits(m.group(1));
+
+        // без валюты и множителя число уверенно считается бюджетом, только если оно достаточно крупное
+        double confidence = 0.5;
+        if (hasMultiplier) confidence += 0.25;
+        if (hasCurrency) confidence += 0.25;
+        if (!hasMultiplier && !hasCurrency && digits >= 5) confidence += 0.3;
+
+        String value = m.group().trim().replaceAll("\\s+", " ");
+        return new SlotValue("budget", value, Math.min(1.0, confidence));
+    }
+
+    private static String lookup(String word, Map<String, String> dictionary) {
+        String exact = dictionary.get(word);
+        if (exact != null) {
+            return exact;
+        }
+        for (Map.Entry<String, String> e : dictionary.entrySet()) {
+            if (e.getKey().length() > 3 && word.startsWith(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static List<String> words(String message) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= message.length(); i++) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (Character.isLetter(c) || (c == '-' && !word.isEmpty())) {
+                word.append(c == 'ё' || c == 'Ё' ? 'е' : c);
+            } else if (!word.isEmpty()) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    private static long countDigits(String number) {
+        return number.chars().filter(Character::isDigit).count();
+    }
+
+    public record SlotValue(String field, String value, double confidence) {
+
+        /** Memory with only this field set, ready for {@link MemoryService#merge}. */
+        public Memory toMemory() {
+            return new Memory(
+                    "budget".equals(field) ? value : null,
+                    "country".equals(field) ? value : null,
+                    null,
+                    "body_type".equals(field) ? value : null,
+                    null
+            );
+        }
+    }
+}
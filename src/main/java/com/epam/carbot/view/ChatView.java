@@ -4,6 +4,11 @@ import com.epam.carbot.domain.BotReply;
 import com.epam.carbot.dto.chat.ChatMessage;
 import com.epam.carbot.service.CarBotService;
 import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.ReplyListener;
+import com.epam.carbot.service.llm.PromptBuilder;
+import com.epam.carbot.service.memory.ConversationCompactor;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.dependency.CssImport;
 import com.vaadin.flow.component.Key;
 import com.vaadin.flow.component.UI;
@@ -16,13 +21,14 @@ import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.shared.Registration;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
 
 @Route("")
 @CssImport("./styles/chat-view.css")
@@ -30,19 +36,47 @@ public class ChatView extends VerticalLayout {
 
     private final ChatSessionService sessions;
     private final CarBotService bot;
+    private final ConversationCompactor compactor;
 
     private final Div messages = new Div();
     private final TextField input = new TextField();
     private final Button sendButton;
 
     private Div typingIndicator;
+    private Div typingBubble;
+    private Span typingText;
+    private Span typingTime;
+
+    // номер следующего ещё не показанного сообщения в истории сессии
+    private long renderedSequence;
+    private Registration heartbeat;
 
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final String THINKING_TEXT = "Оператор думает...";
+    private static final int MAX_RENDERED_MESSAGES = 100;
+    private static final Duration UI_FLUSH_WINDOW = Duration.ofMillis(100);
+
+    // держит ленту прокрученной вниз, пока пользователь сам не отмотал выше
+    private static final String AUTO_SCROLL_JS = """
+            const el = this;
+            if (!el.__autoScroll) {
+                el.__stick = true;
+                el.addEventListener('scroll', () => {
+                    el.__stick = el.scrollHeight - el.scrollTop - el.clientHeight < 80;
+                });
+                el.__autoScroll = new MutationObserver(() => {
+                    if (el.__stick) el.scrollTop = el.scrollHeight;
+                });
+                el.__autoScroll.observe(el, {childList: true, subtree: true, characterData: true});
+            }
+            el.scrollTop = el.scrollHeight;
+            """;
 
     @Autowired
-    public ChatView(ChatSessionService sessions, CarBotService bot) {
+    public ChatView(ChatSessionService sessions, CarBotService bot, ConversationCompactor compactor) {
         this.sessions = sessions;
         this.bot = bot;
+        this.compactor = compactor;
 
         setSizeFull();
         setPadding(false);
@@ -87,6 +121,26 @@ public class ChatView extends VerticalLayout {
         ensureUsernameThenLoad();
     }
 
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        messages.getElement().executeJs(AUTO_SCROLL_JS);
+
+        // пока вкладка открыта, heartbeat (раз в 5 минут по умолчанию) не даёт чистильщику удалить историю
+        String sid = sessions.sessionId();
+        sessions.touch(sid);
+        heartbeat = attachEvent.getUI().addHeartbeatListener(e -> sessions.touch(sid));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (heartbeat != null) {
+            heartbeat.remove();
+            heartbeat = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
     private void ensureUsernameThenLoad() {
         if (sessions.username() == null || sessions.username().isBlank()) {
             Dialog d = new Dialog();
@@ -111,7 +165,7 @@ public class ChatView extends VerticalLayout {
                 String sid = sessions.sessionId();
                 sessions.setPendingField(sid, "budget");
                 sessions.addBotMessage(sid, "Привет, " + n + "! Помогу купить авто. Скажи бюджет и город/страну покупки.");
-                renderAll();
+                renderNewMessages();
             });
 
             ok.addClickShortcut(Key.ENTER);
@@ -122,7 +176,7 @@ public class ChatView extends VerticalLayout {
             d.add(content);
             d.open();
         } else {
-            renderAll();
+            renderNewMessages();
         }
     }
 
@@ -137,20 +191,40 @@ public class ChatView extends VerticalLayout {
         sessions.addUserMessage(sid, username, userText);
 
         String pendingField = sessions.pendingField(sid);
-        List<ChatMessage> recentHistory = sessions.getRecentHistory(sid, 6);
+        List<ChatMessage> recentHistory = sessions.getRecentHistory(sid, PromptBuilder.HISTORY_SCAN);
 
         input.clear();
         setComposerEnabled(false);
-        renderAll();
+        renderNewMessages();
         showTypingIndicator();
-        scrollToBottom();
-
-        UI ui = UI.getCurrent();
-        CompletableFuture
-                .supplyAsync(() -> bot.reply(sid, username, userText, recentHistory, pendingField))
-                .whenComplete((answer, error) -> ui.access(() -> {
-                    hideTypingIndicator();
 
+        // куски ответа и позиция в очереди уходят в браузер пачкой раз в окно, а не на каждый кусок
+        UiUpdateBatcher updates = new UiUpdateBatcher(UI.getCurrent(), UI_FLUSH_WINDOW);
+        StringBuilder partialReply = new StringBuilder();
+        ReplyListener listener = new ReplyListener() {
+            @Override
+            public void onReplyDelta(String delta) {
+                synchronized (partialReply) {
+                    partialReply.append(delta);
+                }
+                // строка собирается раз на отправку в браузер, а не на каждый кусок
+                updates.update("partial", () -> {
+                    String text;
+                    synchronized (partialReply) {
+                        text = partialReply.toString();
+                    }
+                    showPartialReply(text);
+                });
+            }
+
+            @Override
+            public void onQueued(int position) {
+                updates.update("queue", () -> showQueuePosition(position));
+            }
+        };
+
+        bot.replyAsync(sid, username, userText, recentHistory, pendingField, listener)
+                .whenComplete((answer, error) -> updates.finish(() -> {
                     if (error != null) {
                         sessions.addBotMessage(sid, "Сервис временно недоступен. Попробуйте позже.");
                     } else {
@@ -158,43 +232,86 @@ public class ChatView extends VerticalLayout {
                         sessions.addBotMessage(sid, answer.text());
                     }
 
-                    renderAll();
-                    scrollToBottom();
+                    // ответ встаёт на место индикатора набора
+                    renderNewMessages();
+                    hideTypingIndicator();
                     setComposerEnabled(true);
                     input.focus();
+
+                    // старые ходы сворачиваем уже после ответа, к следующему ходу промпт готов
+                    compactor.compactAsync(sid);
                 }));
     }
 
-    private void renderAll() {
-        messages.removeAll();
-        typingIndicator = null;
+    /**
+     * Appends only the messages added since the last call; the DOM keeps at most
+     * {@link #MAX_RENDERED_MESSAGES} rows, so the cost of a turn doesn't grow with the conversation.
+     */
+    private void renderNewMessages() {
         String sid = sessions.sessionId();
+        long sequence = sessions.historySequence(sid);
+        if (sequence < renderedSequence) {
+            // сессию вытеснили по простою, история началась заново
+            messages.removeAll();
+            typingIndicator = null;
+            typingBubble = null;
+            typingText = null;
+            typingTime = null;
+            renderedSequence = 0;
+        }
 
-        for (ChatMessage m : sessions.getHistory(sid)) {
-            Div item = new Div();
-            item.addClassName("tg-row");
-            item.addClassName(m.fromUser() ? "tg-row-user" : "tg-row-bot");
+        for (ChatMessage m : sessions.getHistoryRange(sid, renderedSequence, sequence)) {
+            if (!m.fromUser() && typingIndicator != null) {
+                settleTypingIndicator(m);
+            } else if (typingIndicator != null) {
+                messages.addComponentAtIndex(messages.indexOf(typingIndicator), messageRow(m));
+            } else {
+                messages.add(messageRow(m));
+            }
+        }
+        renderedSequence = sequence;
 
-            Span author = new Span(m.author());
-            author.addClassName("tg-author");
+        while (messages.getComponentCount() > MAX_RENDERED_MESSAGES) {
+            messages.getComponentAt(0).removeFromParent();
+        }
+    }
 
-            String time = TIME_FORMAT.format(m.at().atZone(ZoneId.systemDefault()));
-            Span timestamp = new Span(time);
-            timestamp.addClassName("tg-time");
+    private Div messageRow(ChatMessage m) {
+        Div item = new Div();
+        item.addClassName("tg-row");
+        item.addClassName(m.fromUser() ? "tg-row-user" : "tg-row-bot");
 
-            Div meta = new Div(author, timestamp);
-            meta.addClassName("tg-meta");
+        Span author = new Span(m.author());
+        author.addClassName("tg-author");
 
-            Span text = new Span(m.text());
-            text.addClassName("tg-text");
+        String time = TIME_FORMAT.format(m.at().atZone(ZoneId.systemDefault()));
+        Span timestamp = new Span(time);
+        timestamp.addClassName("tg-time");
 
-            Div bubble = new Div(meta, text);
-            bubble.addClassName("tg-bubble");
-            bubble.addClassName(m.fromUser() ? "tg-user" : "tg-bot");
+        Div meta = new Div(author, timestamp);
+        meta.addClassName("tg-meta");
 
-            item.add(bubble);
-            messages.add(item);
-        }
+        Span text = new Span(m.text());
+        text.addClassName("tg-text");
+
+        Div bubble = new Div(meta, text);
+        bubble.addClassName("tg-bubble");
+        bubble.addClassName(m.fromUser() ? "tg-user" : "tg-bot");
+
+        item.add(bubble);
+        return item;
+    }
+
+    /** Turns the typing row into the bot message in place instead of removing it and adding a new one. */
+    private void settleTypingIndicator(ChatMessage m) {
+        typingIndicator.removeClassName("tg-typing-row");
+        typingBubble.removeClassName("tg-typing");
+        typingText.setText(m.text());
+        typingTime.setText(TIME_FORMAT.format(m.at().atZone(ZoneId.systemDefault())));
+        typingIndicator = null;
+        typingBubble = null;
+        typingText = null;
+        typingTime = null;
     }
 
     private void showTypingIndicator() {
@@ -211,7 +328,7 @@ public class ChatView extends VerticalLayout {
         Div meta = new Div(author, timestamp);
         meta.addClassName("tg-meta");
 
-        Span text = new Span("Оператор думает...");
+        Span text = new Span(THINKING_TEXT);
         text.addClassName("tg-text");
 
         Div bubble = new Div(meta, text);
@@ -220,12 +337,35 @@ public class ChatView extends VerticalLayout {
         row.add(bubble);
         messages.add(row);
         typingIndicator = row;
+        typingBubble = bubble;
+        typingText = text;
+        typingTime = timestamp;
+    }
+
+    private void showPartialReply(String partial) {
+        if (typingText == null) {
+            return;
+        }
+        typingBubble.removeClassName("tg-typing");
+        typingText.setText(partial);
+    }
+
+    private void showQueuePosition(int position) {
+        if (typingText == null) {
+            return;
+        }
+        typingText.setText(position > 0
+                ? "Много обращений, вы в очереди: " + position
+                : THINKING_TEXT);
     }
 
     private void hideTypingIndicator() {
         if (typingIndicator != null) {
             typingIndicator.removeFromParent();
             typingIndicator = null;
+            typingBubble = null;
+            typingText = null;
+            typingTime = null;
         }
     }
 
@@ -233,10 +373,4 @@ public class ChatView extends VerticalLayout {
         input.setEnabled(enabled);
         sendButton.setEnabled(enabled);
     }
-
-    private void scrollToBottom() {
-        UI.getCurrent().getPage().executeJs(
-                "const el = $0; el.scrollTop = el.scrollHeight;", messages.getElement()
-        );
-    }
 }
@@ -0,0 +1,72 @@
+package com.epam.carbot.view;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.Command;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects UI updates coming from background threads during one turn and applies them in a
+ * single {@link UI#access} per window, i.e. one Push message instead of one per chunk.
+ * An update replaces the pending one with the same key, so only the latest partial reply
+ * or queue position is sent.
+ */
+final class UiUpdateBatcher {
+
+    private static final Executor FLUSHER = command -> Thread.ofVirtual().name("ui-flush").start(command);
+
+    private final UI ui;
+    private final Executor delayed;
+
+    private final Map<String, Command> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+    private boolean finished;
+
+    UiUpdateBatcher(UI ui, Duration window) {
+        this.ui = ui;
+        this.delayed = CompletableFuture.delayedExecutor(window.toMillis(), TimeUnit.MILLISECONDS, FLUSHER);
+    }
+
+    void update(String key, Command command) {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            pending.put(key, command);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        delayed.execute(this::flush);
+    }
+
+    /** Runs {@code last} in the same round trip as anything still pending; later updates are dropped. */
+    void finish(Command last) {
+        List<Command> commands = drain(true);
+        commands.add(last);
+        ui.access(() -> commands.forEach(Command::execute));
+    }
+
+    private void flush() {
+        List<Command> commands = drain(false);
+        if (!commands.isEmpty()) {
+            ui.access(() -> commands.forEach(Command::execute));
+        }
+    }
+
+    private synchronized List<Command> drain(boolean finish) {
+        List<Command> commands = new ArrayList<>(pending.values());
+        pending.clear();
+        scheduled = false;
+        finished |= finish;
+        return commands;
+    }
+}
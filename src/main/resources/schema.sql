@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS chat_memory (
+    session_id VARCHAR(64) PRIMARY KEY,
+    budget     VARCHAR(255),
+    country    VARCHAR(255),
+    purpose    VARCHAR(255),
+    body_type  VARCHAR(255),
+    summary    VARCHAR(10000),
+    digest     VARCHAR(10000),
+    updated_at TIMESTAMP NOT NULL
+);
+
+ALTER TABLE chat_memory ADD COLUMN IF NOT EXISTS digest VARCHAR(10000);
+
+CREATE INDEX IF NOT EXISTS idx_chat_memory_updated_at ON chat_memory (updated_at);
@@ -3,7 +3,8 @@ package com.epam.carbot;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// база в памяти, чтобы тест не писал в ./data
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:carbot;DB_CLOSE_DELAY=-1")
 class CarbotApplicationTests {
 
 	@Test
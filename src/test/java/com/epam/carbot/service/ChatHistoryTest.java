@@ -0,0 +1,52 @@
+package com.epam.carbot.service;
+
+import com.epam.carbot.dto.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatHistoryTest {
+
+    @Test
+    void keepsOnlyTheLatestMessages() {
+        ChatHistory history = new ChatHistory(3);
+        for (int i = 1; i <= 5; i++) {
+            history.append(message("m" + i));
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(5, history.sequence());
+        assertEquals(List.of("m3", "m4", "m5"), texts(history.tail(10)));
+        assertEquals(List.of("m4", "m5"), texts(history.tail(2)));
+        assertEquals(List.of("m5"), texts(history.range(4, 10)));
+        assertEquals(List.of("m3"), texts(history.range(0, 3)));
+    }
+
+    @Test
+    void tailViewIsPinnedAndDetectsOverwrite() {
+        ChatHistory history = new ChatHistory(3);
+        history.append(message("m1"));
+        history.append(message("m2"));
+
+        List<ChatMessage> tail = history.tail(2);
+        history.append(message("m3"));
+        assertEquals(List.of("m1", "m2"), texts(tail));
+
+        history.append(message("m4"));
+        assertThrows(ConcurrentModificationException.class, () -> tail.get(0));
+        assertEquals("m2", tail.get(1).text());
+    }
+
+    private static ChatMessage message(String text) {
+        return new ChatMessage("user", text, Instant.EPOCH, true);
+    }
+
+    private static List<String> texts(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::text).toList();
+    }
+}
@@ -0,0 +1,46 @@
+package com.epam.carbot.service;
+
+import com.epam.carbot.dto.chat.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatSessionServiceTest {
+
+    private final ChatSessionService sessions = new ChatSessionService(3, Duration.ofMillis(50), Duration.ofHours(1));
+
+    @AfterEach
+    void tearDown() {
+        sessions.destroy();
+    }
+
+    @Test
+    void historyIsASnapshotThatOutlivesTheRing() {
+        sessions.addUserMessage("s1", "user", "m1");
+        sessions.addBotMessage("s1", "m2");
+
+        List<ChatMessage> recent = sessions.getRecentHistory("s1", 2);
+        for (int i = 3; i <= 6; i++) {
+            sessions.addUserMessage("s1", "user", "m" + i);
+        }
+
+        assertEquals(List.of("m1", "m2"), recent.stream().map(ChatMessage::text).toList());
+    }
+
+    @Test
+    void idleSweepKeepsTouchedSessions() throws InterruptedException {
+        sessions.addUserMessage("open-tab", "user", "hi");
+        sessions.addUserMessage("closed-tab", "user", "hi");
+
+        Thread.sleep(100);
+        sessions.touch("open-tab");
+        sessions.evictIdle();
+
+        assertEquals(1, sessions.activeSessionCount());
+        assertEquals(1, sessions.historySequence("open-tab"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.epam.carbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TurnExecutorTest {
+
+    @Test
+    void rejectsTurnsBeyondConcurrencyAndQueueBound() throws Exception {
+        TurnExecutor executor = new TurnExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> running = executor.submit(() -> await(release, "first"));
+        CompletableFuture<String> waiting = executor.submit(() -> "second");
+        waitUntil(() -> executor.activeCount() == 1);
+
+        CompletableFuture<String> rejected = executor.submit(() -> "third");
+
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertEquals(1, executor.rejectedCount());
+        assertEquals(1, executor.queuedCount());
+
+        release.countDown();
+        assertEquals("first", running.get(1, TimeUnit.SECONDS));
+        assertEquals("second", waiting.get(1, TimeUnit.SECONDS));
+        executor.destroy();
+    }
+
+    @Test
+    void runsTurnsOfOneKeyInOrderAndOtherKeysInParallel() throws Exception {
+        TurnExecutor executor = new TurnExecutor(4, 4);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = executor.submit("session-1", () -> await(release, "first"));
+        CompletableFuture<String> second = executor.submit("session-1", () -> "second");
+        CompletableFuture<String> other = executor.submit("session-2", () -> "other");
+
+        assertEquals("other", other.get(1, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+
+        release.countDown();
+        assertEquals("first", first.get(1, TimeUnit.SECONDS));
+        assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        waitUntil(() -> executor.serializedKeyCount() == 0);
+        assertEquals(0, executor.serializedKeyCount());
+        executor.destroy();
+    }
+
+    @Test
+    void chainedTurnsOfOneKeyCountAgainstTheQueueBound() throws Exception {
+        TurnExecutor executor = new TurnExecutor(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> running = executor.submit("session-1", () -> await(release, "first"));
+        waitUntil(() -> executor.activeCount() == 1);
+        CompletableFuture<String> second = executor.submit("session-1", () -> "second");
+        CompletableFuture<String> third = executor.submit("session-1", () -> "third");
+
+        CompletableFuture<String> spam = executor.submit("session-1", () -> "fourth");
+
+        ExecutionException error = assertThrows(ExecutionException.class, spam::get);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertEquals(2, executor.queuedCount());
+
+        release.countDown();
+        assertEquals("first", running.get(1, TimeUnit.SECONDS));
+        assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        assertEquals("third", third.get(1, TimeUnit.SECONDS));
+        waitUntil(() -> executor.queuedCount() == 0);
+        assertEquals(0, executor.queuedCount());
+        executor.destroy();
+    }
+
+    private static String await(CountDownLatch latch, String value) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
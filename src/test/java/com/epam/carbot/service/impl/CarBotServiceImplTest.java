@@ -0,0 +1,150 @@
+package com.epam.carbot.service.impl;
+
+import com.epam.carbot.domain.BotReply;
+import com.epam.carbot.domain.Memory;
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.TurnExecutor;
+import com.epam.carbot.service.llm.BotAnswerParser;
+import com.epam.carbot.service.llm.IntentRouter;
+import com.epam.carbot.service.llm.LlmAdmissionQueue;
+import com.epam.carbot.service.llm.LlmClient;
+import com.epam.carbot.service.llm.LlmInvalidRequestException;
+import com.epam.carbot.service.llm.PromptBuilder;
+import com.epam.carbot.service.memory.InMemoryMemoryStore;
+import com.epam.carbot.service.memory.MemoryService;
+import com.epam.carbot.service.memory.SlotExtractor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CarBotServiceImplTest {
+
+    private static final String SID = "sid-1";
+    private static final String ANSWER = """
+            {"reply": "Посмотрите Skoda Octavia", "memory": {"budget": "2 млн", "country": "Германия", "purpose": "город", "body_type": "седан", "summary": "s"}}
+            """;
+
+    private final ChatSessionService sessions = new ChatSessionService(100, Duration.ofMinutes(30), Duration.ofMinutes(1));
+    private final AtomicBoolean failWrites = new AtomicBoolean();
+    private final InMemoryMemoryStore memoryStore = new InMemoryMemoryStore(Duration.ofHours(1), 1000, Duration.ofMinutes(1)) {
+        @Override
+        public Memory compute(String username, UnaryOperator<Memory> update) {
+            if (failWrites.get()) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return super.compute(username, update);
+        }
+    };
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TurnExecutor turnExecutor = new TurnExecutor(4, 16);
+    private final List<GenerateRequest> requests = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        sessions.destroy();
+        memoryStore.destroy();
+        turnExecutor.destroy();
+    }
+
+    @Test
+    void pinsContinuedTurnToTheSidecarThatOwnsTheChat() {
+        CarBotServiceImpl bot = bot(request -> response(request.chatMode(), "https://chat/1", "http://sidecar-2"));
+
+        bot.reply(SID, "user", "Что посоветуете?", List.of(), null);
+        bot.reply(SID, "user", "А ещё?", List.of(), null);
+
+        assertEquals(2, requests.size());
+        assertEquals("new", requests.get(0).chatMode());
+        GenerateRequest continued = requests.get(1);
+        assertEquals("continue", continued.chatMode());
+        assertEquals("https://chat/1", continued.chatUrl());
+        assertEquals("http://sidecar-2", continued.backend());
+        assertFalse(continued.prompt().startsWith("SYSTEM:"));
+    }
+
+    @Test
+    void fallsBackToFullPromptWhenChatIsStale() {
+        CarBotServiceImpl bot = bot(request -> {
+            if ("continue".equals(request.chatMode())) {
+                throw new LlmInvalidRequestException("chat gone");
+            }
+            return response("new", "https://chat/" + requests.size(), "http://sidecar-1");
+        });
+
+        bot.reply(SID, "user", "Что посоветуете?", List.of(), null);
+        BotReply reply = bot.reply(SID, "user", "А ещё?", List.of(), null);
+
+        assertEquals(List.of("new", "continue", "new"), requests.stream().map(GenerateRequest::chatMode).toList());
+        assertTrue(requests.get(2).prompt().startsWith("SYSTEM:"));
+        assertEquals("Посмотрите Skoda Octavia", reply.text());
+        assertEquals("https://chat/3", sessions.chatUrl(SID));
+    }
+
+    @Test
+    void keepsAnswerWhenSidecarStartedNewChatInsteadOfContinuing() {
+        CarBotServiceImpl bot = bot(request -> response("new", "https://chat/" + requests.size(), "http://sidecar-1"));
+
+        bot.reply(SID, "user", "Что посоветуете?", List.of(), null);
+        BotReply reply = bot.reply(SID, "user", "А ещё?", List.of(), null);
+
+        assertEquals(2, requests.size());
+        assertEquals("Посмотрите Skoda Octavia", reply.text());
+        assertNull(sessions.chatUrl(SID));
+        assertNull(sessions.chatBackend(SID));
+    }
+
+    @Test
+    void countsTurnOnceWhenMergeFailsAfterParsing() {
+        CarBotServiceImpl bot = bot(request -> response("new", null, null));
+        failWrites.set(true);
+
+        bot.reply(SID, "user", "Что посоветуете?", List.of(), null);
+
+        assertEquals(0, registry.get("carbot.llm.turn").tag("outcome", "ok").timer().count());
+        assertEquals(1, registry.get("carbot.llm.turn").tag("outcome", "unparsable").timer().count());
+    }
+
+    private CarBotServiceImpl bot(Function<GenerateRequest, GenerateResponse> llm) {
+        // все поля собраны, каждый ход идёт в LLM
+        memoryStore.put(SID, new Memory("2 млн", "Германия", "город", "седан", "s"));
+        LlmClient client = request -> {
+            requests.add(request);
+            return llm.apply(request);
+        };
+        return new CarBotServiceImpl(
+                client,
+                new PromptBuilder(600),
+                new BotAnswerParser(),
+                memoryStore,
+                new MemoryService(),
+                new IntentRouter(new ClassPathResource("intent-phrases.txt")),
+                new SlotExtractor(),
+                turnExecutor,
+                new LlmAdmissionQueue(4, 16, Duration.ofSeconds(5), 3),
+                sessions,
+                registry,
+                "continue",
+                0.75,
+                "full"
+        );
+    }
+
+    private static GenerateResponse response(String modeUsed, String chatUrl, String backend) {
+        return new GenerateResponse(true, ANSWER, modeUsed, chatUrl, backend);
+    }
+}
@@ -0,0 +1,46 @@
+package com.epam.carbot.service.impl;
+
+import com.epam.carbot.service.llm.IntentRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TurnMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TurnMetrics metrics = new TurnMetrics(registry, AnswerContract.DELTA);
+
+    @Test
+    void tagsLlmLatencyByOutcomeAndContract() {
+        metrics.llmCall(TurnMetrics.Outcome.OK, TimeUnit.MILLISECONDS.toNanos(1200));
+        metrics.llmCall(TurnMetrics.Outcome.UNPARSABLE, TimeUnit.MILLISECONDS.toNanos(800));
+        metrics.llmCall(TurnMetrics.Outcome.OK, TimeUnit.MILLISECONDS.toNanos(300));
+
+        var ok = registry.get("carbot.llm.turn").tag("outcome", "ok").tag("contract", "delta").timer();
+        assertEquals(2, ok.count());
+        assertEquals(1500, ok.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, registry.get("carbot.llm.turn").tag("outcome", "unparsable").timer().count());
+        assertEquals(0, registry.get("carbot.llm.turn").tag("outcome", "busy").timer().count());
+    }
+
+    @Test
+    void countsRoutesIntentsAndRepairs() {
+        metrics.intent(IntentRouter.Intent.OTHER);
+        metrics.route(TurnMetrics.Route.FIELD_QUESTION);
+        metrics.intent(IntentRouter.Intent.PROVIDE_INFO);
+        metrics.route(TurnMetrics.Route.LLM);
+        metrics.parsed(true);
+        metrics.parsed(false);
+        metrics.parsed(false);
+
+        assertEquals(1, registry.get("carbot.intent").tag("intent", "other").counter().count());
+        assertEquals(1, registry.get("carbot.turns").tag("route", "field_question").counter().count());
+        assertEquals(1, registry.get("carbot.turns").tag("route", "llm").counter().count());
+        assertEquals(0, registry.get("carbot.turns").tag("route", "slot_filled").counter().count());
+        assertEquals(1, registry.get("carbot.answer.parsed").tag("repaired", "true").counter().count());
+        assertEquals(2, registry.get("carbot.answer.parsed").tag("repaired", "false").counter().count());
+    }
+}
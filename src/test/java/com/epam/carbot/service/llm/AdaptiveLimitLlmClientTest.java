@@ -0,0 +1,135 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveLimitLlmClientTest {
+
+    private static final GenerateRequest REQUEST = new GenerateRequest("prompt", "incognito", null);
+    private static final GenerateResponse OK = new GenerateResponse(true, "{}", "incognito", null);
+
+    @Test
+    void growsLimitWhileCallsSucceedAndCutsItOnBusy() {
+        boolean[] busy = {false};
+        AdaptiveLimitLlmClient client = new AdaptiveLimitLlmClient(request -> {
+            if (busy[0]) {
+                throw new LlmBusyException("busy");
+            }
+            return OK;
+        }, 2, 1, 8, 0.5, 1000.0);
+
+        for (int i = 0; i < 20; i++) {
+            client.generate(REQUEST);
+        }
+        assertEquals(3, client.limit());
+
+        busy[0] = true;
+        assertThrows(LlmBusyException.class, () -> client.generate(REQUEST));
+        assertEquals(1, client.limit());
+    }
+
+    @Test
+    void judgesStreamLatencyByFirstChunk() {
+        long[] tailMillis = {0};
+        AdaptiveLimitLlmClient client = new AdaptiveLimitLlmClient(new LlmClient() {
+            @Override
+            public GenerateResponse generate(GenerateRequest request) {
+                return OK;
+            }
+
+            @Override
+            public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+                onChunk.accept("{");
+                sleep(tailMillis[0]);
+                return OK;
+            }
+        }, 4, 1, 8, 0.5, 50.0);
+
+        for (int i = 0; i < 5; i++) {
+            client.generateStream(REQUEST, chunk -> { });
+        }
+        // длинный хвост ответа после быстрого первого чанка — не перегрузка
+        tailMillis[0] = 200;
+        client.generateStream(REQUEST, chunk -> { });
+
+        assertEquals(4, client.limit());
+    }
+
+    @Test
+    void cutsOnceForABurstOfSlowCallsStartedTogether() throws Exception {
+        CountDownLatch entered = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        boolean[] slow = {false};
+        AdaptiveLimitLlmClient client = new AdaptiveLimitLlmClient(request -> {
+            if (slow[0]) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sleep(50);
+            }
+            return OK;
+        }, 8, 1, 8, 0.5, 2.0);
+
+        for (int i = 0; i < 5; i++) {
+            client.generate(REQUEST);
+        }
+        slow[0] = true;
+        List<Thread> burst = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            burst.add(Thread.ofVirtual().start(() -> client.generate(REQUEST)));
+        }
+        entered.await(5, TimeUnit.SECONDS);
+        release.countDown();
+        for (Thread call : burst) {
+            call.join();
+        }
+
+        assertEquals(4, client.limit());
+    }
+
+    @Test
+    void shedsCallsAboveTheLimit() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AdaptiveLimitLlmClient client = new AdaptiveLimitLlmClient(request -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return OK;
+        }, 1, 1, 1, 0.5, 2.0);
+
+        Thread running = Thread.ofVirtual().start(() -> client.generate(REQUEST));
+        entered.await(5, TimeUnit.SECONDS);
+
+        assertThrows(LlmBusyException.class, () -> client.generate(REQUEST));
+        assertEquals(1, client.shedCount());
+        assertEquals(1, client.inFlightCount());
+
+        release.countDown();
+        running.join();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateBatchRequest;
+import com.epam.carbot.dto.generate.GenerateBatchResponse;
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchingLlmClientTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicInteger batchCalls = new AtomicInteger();
+    private final Map<String, AtomicInteger> callsBySidecar = new ConcurrentHashMap<>();
+    private final List<HttpServer> sidecars = new ArrayList<>();
+    private LlmBackendPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        sidecars.forEach(sidecar -> sidecar.stop(0));
+    }
+
+    @Test
+    void sendsConcurrentRequestsToTheSidecarAsOneBatch() throws Exception {
+        String url = startStubSidecar();
+        pool = new LlmBackendPool(List.of(new LlmBackendPool.Backend(url, RestClient.create(url))), 3, Duration.ofHours(1), "/health");
+        BatchingLlmClient client = new BatchingLlmClient(new PlaywrightLlmClient(pool, false), Duration.ofMillis(200), 4);
+
+        List<CompletableFuture<GenerateResponse>> replies = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            GenerateRequest request = new GenerateRequest("prompt-" + i, "incognito", null);
+            replies.add(CompletableFuture.supplyAsync(() -> client.generate(request), runnable -> Thread.ofVirtual().start(runnable)));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("echo:prompt-" + i, replies.get(i).get(5, TimeUnit.SECONDS).text());
+        }
+        assertEquals(1, batchCalls.get());
+        assertEquals(1, client.batchCount());
+        assertEquals(4, client.batchedRequestCount());
+    }
+
+    @Test
+    void sendsPinnedRequestsOnlyToTheirSidecarAndStampsResponses() throws Exception {
+        String first = startStubSidecar();
+        String second = startStubSidecar();
+        pool = new LlmBackendPool(List.of(
+                new LlmBackendPool.Backend(first, RestClient.create(first)),
+                new LlmBackendPool.Backend(second, RestClient.create(second))
+        ), 3, Duration.ofHours(1), "/health");
+        BatchingLlmClient client = new BatchingLlmClient(new PlaywrightLlmClient(pool, false), Duration.ofMillis(200), 4);
+
+        List<GenerateRequest> requests = List.of(
+                new GenerateRequest("prompt-0", "continue", "https://chat/0", first),
+                new GenerateRequest("prompt-1", "continue", "https://chat/1", second)
+        );
+        List<CompletableFuture<GenerateResponse>> replies = new ArrayList<>();
+        for (GenerateRequest request : requests) {
+            replies.add(CompletableFuture.supplyAsync(() -> client.generate(request), runnable -> Thread.ofVirtual().start(runnable)));
+        }
+
+        for (int i = 0; i < requests.size(); i++) {
+            GenerateResponse response = replies.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("echo:prompt-" + i, response.text());
+            assertEquals(requests.get(i).backend(), response.backend());
+        }
+        assertEquals(1, callsBySidecar.get(first).get());
+        assertEquals(1, callsBySidecar.get(second).get());
+        assertEquals(2, client.batchCount());
+    }
+
+    @Test
+    void closeFailsWaitingRequestsAndRejectsNewOnes() {
+        BatchingLlmClient client = new BatchingLlmClient(request -> new GenerateResponse(true, "never", "incognito", null),
+                Duration.ofHours(1), 4);
+        GenerateRequest request = new GenerateRequest("prompt", "incognito", null);
+        CompletableFuture<GenerateResponse> waiting =
+                CompletableFuture.supplyAsync(() -> client.generate(request), runnable -> Thread.ofVirtual().start(runnable));
+
+        client.close();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LlmServiceException.class, failure.getCause());
+        assertThrows(LlmServiceException.class, () -> client.generate(request));
+    }
+
+    private String startStubSidecar() throws IOException {
+        HttpServer sidecar = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String url = "http://127.0.0.1:" + sidecar.getAddress().getPort();
+        AtomicInteger calls = callsBySidecar.computeIfAbsent(url, u -> new AtomicInteger());
+        sidecar.createContext("/generate/batch", exchange -> {
+            calls.incrementAndGet();
+            answerBatch(exchange);
+        });
+        sidecar.createContext("/generate", exchange -> {
+            calls.incrementAndGet();
+            answerOne(exchange);
+        });
+        sidecar.start();
+        sidecars.add(sidecar);
+        return url;
+    }
+
+    private void answerBatch(HttpExchange exchange) throws IOException {
+        batchCalls.incrementAndGet();
+        GenerateBatchRequest batch = mapper.readValue(exchange.getRequestBody(), GenerateBatchRequest.class);
+        List<GenerateResponse> responses = batch.requests().stream()
+                .map(r -> new GenerateResponse(true, "echo:" + r.prompt(), r.chatMode(), null))
+                .toList();
+        respond(exchange, mapper.writeValueAsBytes(new GenerateBatchResponse(responses)));
+    }
+
+    private void answerOne(HttpExchange exchange) throws IOException {
+        GenerateRequest request = mapper.readValue(exchange.getRequestBody(), GenerateRequest.class);
+        respond(exchange, mapper.writeValueAsBytes(new GenerateResponse(true, "echo:" + request.prompt(), request.chatMode(), request.chatUrl())));
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
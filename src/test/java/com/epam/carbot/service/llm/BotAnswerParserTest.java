@@ -3,7 +3,12 @@ package com.epam.carbot.service.llm;
 import com.epam.carbot.domain.BotAnswer;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BotAnswerParserTest {
 
@@ -93,4 +98,38 @@ class BotAnswerParserTest {
 
         assertEquals("строка 1\nстрока 2", answer.reply());
     }
+
+    @Test
+    void emitsReplyFromChunksBeforeMemoryArrives() throws Exception {
+        List<String> replies = new ArrayList<>();
+        IncrementalAnswerParser incremental = parser.newIncremental(replies::add);
+
+        incremental.feed("```json\n{\"reply\": \"Добрый\\nде");
+        incremental.feed("нь\\u0021\", \"memo");
+        assertTrue(incremental.isReplyComplete());
+        assertEquals(List.of("Добрый\nде", "нь!"), replies);
+
+        incremental.feed("ry\": {\"budget\": \"1000\", \"summary\": \"a\nb\"}}\n```");
+
+        BotAnswer answer = incremental.finish();
+        assertEquals("Добрый\nдень!", answer.reply());
+        assertEquals("a\nb", answer.memory().summary());
+        assertTrue(incremental.isRepaired());
+    }
+
+    @Test
+    void readsDeltaAnswerWithShortKeys() throws Exception {
+        List<String> replies = new ArrayList<>();
+        IncrementalAnswerParser incremental = parser.newIncremental(replies::add);
+
+        incremental.feed("{\"r\": \"Понял, Германия");
+        incremental.feed(".\", \"m\": {\"c\": \"Германия\"}}");
+        assertTrue(incremental.isReplyComplete());
+        assertEquals("Понял, Германия.", String.join("", replies));
+
+        BotAnswer answer = incremental.finish();
+        assertEquals("Понял, Германия.", answer.reply());
+        assertEquals("Германия", answer.memory().country());
+        assertNull(answer.memory().budget());
+    }
 }
@@ -0,0 +1,134 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.domain.Memory;
+import com.epam.carbot.dto.chat.ChatMessage;
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CachingLlmClientTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final LlmClient upstream = request -> new GenerateResponse(true, "answer " + calls.incrementAndGet(), "incognito", null);
+
+    @Test
+    void servesRepeatedIncognitoPromptFromCache() {
+        CachingLlmClient client = new CachingLlmClient(upstream, 10, Duration.ofMinutes(5));
+
+        client.generate(new GenerateRequest("привет", "incognito", null));
+        GenerateResponse second = client.generate(new GenerateRequest("привет", "incognito", null));
+
+        assertEquals("answer 1", second.text());
+        assertEquals(1, calls.get());
+        assertEquals(1, client.hitCount());
+        assertEquals(1, client.missCount());
+    }
+
+    @Test
+    void sameQuestionFromDifferentSessionsHitsTheCache() {
+        CachingLlmClient client = new CachingLlmClient(upstream, 10, Duration.ofMinutes(5));
+        PromptBuilder builder = new PromptBuilder(600);
+        Memory empty = new Memory(null, null, null, null, "");
+        List<String> missing = List.of("budget", "country", "purpose", "body_type");
+
+        // у каждой сессии своё приветствие с именем, поэтому полные промпты различаются
+        GenerateRequest first = request(builder, empty, missing, "Здравствуйте, Анна!", "Привет");
+        GenerateRequest second = request(builder, empty, missing, "Здравствуйте, Борис!", "  привет! ");
+        client.generate(first);
+        GenerateResponse answer = client.generate(second);
+
+        assertNotEquals(first.prompt(), second.prompt());
+        assertEquals("answer 1", answer.text());
+        assertEquals(1, calls.get());
+        assertEquals(1, client.hitCount());
+
+        client.generate(request(builder, new Memory("2 млн", null, null, null, ""), missing, "Здравствуйте, Анна!", "Привет"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void bypassesCacheForStatefulChatModes() {
+        CachingLlmClient client = new CachingLlmClient(upstream, 10, Duration.ofMinutes(5));
+
+        client.generate(new GenerateRequest("привет", "continue", "https://chat/1"));
+        client.generate(new GenerateRequest("привет", "continue", "https://chat/1"));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() {
+        CachingLlmClient client = new CachingLlmClient(upstream, 1, Duration.ofMinutes(5));
+
+        client.generate(new GenerateRequest("a", "incognito", null));
+        client.generate(new GenerateRequest("b", "incognito", null));
+        client.generate(new GenerateRequest("a", "incognito", null));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, client.evictionCount());
+        assertEquals(1, client.size());
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        CachingLlmClient client = new CachingLlmClient(upstream, 10, Duration.ofMinutes(5), clock);
+
+        client.generate(new GenerateRequest("a", "incognito", null));
+        clock.setInstant(Instant.parse("2026-01-01T00:04:59Z"));
+        assertEquals("answer 1", client.generate(new GenerateRequest("a", "incognito", null)).text());
+
+        clock.setInstant(Instant.parse("2026-01-01T00:05:01Z"));
+        GenerateResponse expired = client.generate(new GenerateRequest("a", "incognito", null));
+
+        assertEquals("answer 2", expired.text());
+        assertEquals(1, client.hitCount());
+        assertEquals(2, client.missCount());
+        assertEquals(1, client.evictionCount());
+    }
+
+    private static GenerateRequest request(PromptBuilder builder, Memory memory, List<String> missing, String greeting, String message) {
+        List<ChatMessage> history = List.of(new ChatMessage("bot", greeting, Instant.EPOCH, false));
+        String prompt = builder.build("SYSTEM", memory, missing, null, "OTHER", history, message);
+        String key = builder.stateKey(memory, missing, null, "OTHER", message);
+        return new GenerateRequest(prompt, "incognito", null, null, key);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void setInstant(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
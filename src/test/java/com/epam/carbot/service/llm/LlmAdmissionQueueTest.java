@@ -0,0 +1,154 @@
+package com.epam.carbot.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmAdmissionQueueTest {
+
+    @Test
+    void servesSessionsRoundRobinAndReportsPositions() throws Exception {
+        LlmAdmissionQueue queue = new LlmAdmissionQueue(1, 10, Duration.ofSeconds(5), 3);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> served = Collections.synchronizedList(new ArrayList<>());
+        Map<String, Integer> firstPosition = new ConcurrentHashMap<>();
+
+        Thread blocker = Thread.ofVirtual().start(() -> queue.call("s0", p -> { }, () -> await(release)));
+        waitUntilWaiting(queue, 0);
+
+        List<Thread> waiters = new ArrayList<>();
+        String[][] arrivals = {{"s1", "s1-a"}, {"s1", "s1-b"}, {"s2", "s2-a"}};
+        for (int i = 0; i < arrivals.length; i++) {
+            String session = arrivals[i][0];
+            String name = arrivals[i][1];
+            waiters.add(Thread.ofVirtual().start(() -> queue.call(session,
+                    p -> firstPosition.putIfAbsent(name, p),
+                    () -> served.add(name))));
+            waitUntilWaiting(queue, i + 1);
+        }
+
+        release.countDown();
+        blocker.join();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        assertEquals(List.of("s1-a", "s2-a", "s1-b"), served);
+        assertEquals(2, firstPosition.get("s2-a"));
+        assertEquals(0, queue.waitingCount());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        LlmAdmissionQueue queue = new LlmAdmissionQueue(1, 0, Duration.ofSeconds(5), 3);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread blocker = Thread.ofVirtual().start(() -> queue.call("s0", p -> { }, () -> await(release)));
+        waitUntil(() -> queue.admittedCount() == 1);
+
+        assertThrows(LlmBusyException.class, () -> queue.call("s1", p -> { }, () -> "never"));
+        assertEquals(1, queue.rejectedCount());
+
+        release.countDown();
+        blocker.join();
+    }
+
+    @Test
+    void takesInFlightLimitFromTheLimiter() throws Exception {
+        LlmAdmissionQueue queue = new LlmAdmissionQueue(16, 10, Duration.ofSeconds(5), 3);
+        AtomicInteger limit = new AtomicInteger(1);
+        queue.limitBy(limit::get);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondServed = new CountDownLatch(1);
+
+        Thread first = Thread.ofVirtual().start(() -> queue.call("s1", p -> { }, () -> await(release)));
+        waitUntil(() -> queue.admittedCount() == 1);
+        Thread second = Thread.ofVirtual().start(() -> queue.call("s2", p -> { }, () -> {
+            secondServed.countDown();
+            return "served";
+        }));
+        waitUntilWaiting(queue, 1);
+
+        limit.set(2);
+        queue.limitBy(limit::get);
+
+        assertTrue(secondServed.await(2, TimeUnit.SECONDS));
+        release.countDown();
+        first.join();
+        second.join();
+    }
+
+    @Test
+    void givesUpOnBusyAfterBoundedRetries() {
+        LlmAdmissionQueue queue = new LlmAdmissionQueue(1, 10, Duration.ofSeconds(30), 1);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(LlmBusyException.class, () -> queue.call("s1", p -> { }, () -> {
+            calls.incrementAndGet();
+            throw new LlmBusyException("busy");
+        }));
+
+        assertEquals(2, calls.get());
+        // слот вернулся в очередь
+        assertEquals("ok", queue.call("s2", p -> { }, () -> "ok"));
+    }
+
+    @Test
+    void catchesUpOnPositionsAfterAThrottledGrant() throws Exception {
+        LlmAdmissionQueue queue = new LlmAdmissionQueue(1, 10, Duration.ofSeconds(5), 3);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch releaseSecond = new CountDownLatch(1);
+        AtomicInteger lastPosition = new AtomicInteger(-1);
+
+        Thread blocker = Thread.ofVirtual().start(() -> queue.call("s0", p -> { }, () -> await(releaseFirst)));
+        waitUntilWaiting(queue, 0);
+        Thread second = Thread.ofVirtual().start(() -> queue.call("s1", p -> { }, () -> await(releaseSecond)));
+        waitUntilWaiting(queue, 1);
+        Thread third = Thread.ofVirtual().start(() -> queue.call("s2", lastPosition::set, () -> "served"));
+        waitUntilWaiting(queue, 2);
+        assertEquals(2, lastPosition.get());
+
+        // выдача слота попадает в окно троттлинга; позицию догоняет отложенный пересчёт
+        releaseFirst.countDown();
+        waitUntil(() -> lastPosition.get() == 1);
+
+        releaseSecond.countDown();
+        blocker.join();
+        second.join();
+        third.join();
+        assertEquals(0, lastPosition.get());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void waitUntilWaiting(LlmAdmissionQueue queue, int expected) throws InterruptedException {
+        waitUntil(() -> queue.waitingCount() == expected && queue.admittedCount() >= 1);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
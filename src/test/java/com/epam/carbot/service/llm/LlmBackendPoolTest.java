@@ -0,0 +1,127 @@
+package com.epam.carbot.service.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmBackendPoolTest {
+
+    private final RestClient first = RestClient.create("http://sidecar-1");
+    private final RestClient second = RestClient.create("http://sidecar-2");
+    private final LlmBackendPool pool = new LlmBackendPool(
+            List.of(new LlmBackendPool.Backend("http://sidecar-1", first), new LlmBackendPool.Backend("http://sidecar-2", second)),
+            2,
+            Duration.ofHours(1),
+            "/health"
+    );
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void movesBusyCallToAnotherBackend() {
+        List<RestClient> calls = new ArrayList<>();
+
+        String result = pool.execute(client -> {
+            calls.add(client);
+            if (calls.size() == 1) {
+                throw new LlmBusyException("busy");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, calls.size());
+        assertFalse(calls.get(0) == calls.get(1));
+    }
+
+    @Test
+    void throwsBusyWhenEveryBackendIsBusy() {
+        assertThrows(LlmBusyException.class, () -> pool.execute(client -> {
+            throw new LlmBusyException("busy");
+        }));
+    }
+
+    @Test
+    void ejectsBackendAfterConsecutiveFailuresButKeepsTheLastOne() {
+        for (int i = 0; i < 6; i++) {
+            assertThrows(LlmServiceException.class, () -> pool.execute(client -> {
+                throw new LlmServiceException("down", null);
+            }));
+        }
+
+        assertEquals(1, pool.backends().stream().filter(LlmBackendPool.Backend::healthy).count());
+        assertEquals("ok", pool.execute(client -> "ok"));
+    }
+
+    @Test
+    void restoresBackendOnlyOnSuccessfulHealthCheck() throws IOException {
+        AtomicInteger healthStatus = new AtomicInteger(404);
+        HttpServer sidecar = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        sidecar.createContext("/health", exchange -> {
+            exchange.sendResponseHeaders(healthStatus.get(), -1);
+            exchange.close();
+        });
+        sidecar.start();
+        String url = "http://127.0.0.1:" + sidecar.getAddress().getPort();
+        LlmBackendPool probed = new LlmBackendPool(
+                List.of(new LlmBackendPool.Backend(url, RestClient.create(url)), new LlmBackendPool.Backend("http://sidecar-2", second)),
+                1,
+                Duration.ofHours(1),
+                "/health"
+        );
+        try {
+            assertThrows(LlmServiceException.class, () -> probed.execute(url, backend -> {
+                throw new LlmServiceException("down", null);
+            }));
+            assertFalse(probed.backends().get(0).healthy());
+
+            probed.probeEjected();
+            assertFalse(probed.backends().get(0).healthy());
+
+            healthStatus.set(200);
+            probed.probeEjected();
+            assertTrue(probed.backends().get(0).healthy());
+        } finally {
+            probed.close();
+            sidecar.stop(0);
+        }
+    }
+
+    @Test
+    void runsPinnedCallOnlyOnItsBackend() {
+        List<String> calls = new ArrayList<>();
+
+        assertThrows(LlmBusyException.class, () -> pool.execute("http://sidecar-2", backend -> {
+            calls.add(backend.url());
+            throw new LlmBusyException("busy");
+        }));
+        String result = pool.execute("http://sidecar-2", backend -> {
+            calls.add(backend.url());
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(List.of("http://sidecar-2", "http://sidecar-2"), calls);
+    }
+
+    @Test
+    void rejectsPinnedCallWhenItsBackendIsGone() {
+        assertThrows(LlmInvalidRequestException.class, () -> pool.execute("http://sidecar-9", backend -> "ok"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.epam.carbot.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PhraseMatcherTest {
+
+    private final PhraseMatcher matcher = PhraseMatcher.of(List.of(
+            new PhraseMatcher.Phrase("clarification", "что лучше"),
+            new PhraseMatcher.Phrase("clarification", "в чем разница"),
+            new PhraseMatcher.Phrase("currency", "руб"),
+            new PhraseMatcher.Phrase("currency", "рубл"),
+            new PhraseMatcher.Phrase("digit", "2")
+    ));
+
+    @Test
+    void reportsOverlappingMatchesWithPositions() {
+        List<String> matches = new ArrayList<>();
+        matcher.forEachMatch("2 млн РУБЛЕЙ", (label, start, end) ->
+                matches.add(matcher.label(label) + "@" + start + "-" + end));
+
+        assertEquals(List.of("digit@0-1", "currency@6-9", "currency@6-10"), matches);
+    }
+
+    @Test
+    void foldsCaseAndYoInOnePass() {
+        long found = matcher.labelsIn("А в ЧЁМ РАЗНИЦА между ними");
+
+        assertEquals(matcher.labelBit("clarification"), found);
+        assertEquals(0, matcher.labelsIn("кроссовер"));
+    }
+
+    @Test
+    void routesIntentsThroughThePhraseDictionary() {
+        IntentRouter router = new IntentRouter(PhraseMatcher.of(List.of(
+                new PhraseMatcher.Phrase("clarification", "?"),
+                new PhraseMatcher.Phrase("clarification", "почему"),
+                new PhraseMatcher.Phrase("digit", "3"),
+                new PhraseMatcher.Phrase("currency", "eur")
+        )));
+
+        assertEquals(IntentRouter.Intent.ASK_CLARIFICATION, router.detectIntent("Почему так дорого", List.of("budget"), "budget"));
+        assertEquals(IntentRouter.Intent.PROVIDE_INFO, router.detectIntent("30000 EUR", List.of("budget"), "budget"));
+        assertEquals(IntentRouter.Intent.OTHER, router.detectIntent("привет", List.of(), null));
+    }
+}
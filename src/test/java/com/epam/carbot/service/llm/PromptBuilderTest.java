@@ -0,0 +1,82 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.domain.Memory;
+import com.epam.carbot.dto.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PromptBuilderTest {
+
+    @Test
+    void fillsHistoryWindowFromNewestUntilTokenBudgetIsUsed() {
+        PromptBuilder builder = new PromptBuilder(60);
+        ChatMessage longRecommendation = message("a".repeat(400));
+        ChatMessage question = message("Какой бюджет?");
+        ChatMessage answer = message("2 млн");
+
+        List<ChatMessage> window = builder.historyWindow(List.of(longRecommendation, question, answer));
+
+        assertEquals(List.of(question, answer), window);
+    }
+
+    @Test
+    void cachesTokenEstimateOnTheMessage() {
+        assertEquals(100, message("a".repeat(400)).tokens());
+        assertEquals(3, message("Привет").tokens());
+    }
+
+    @Test
+    void deltaPromptCarriesOnlyContextAndMessage() {
+        PromptBuilder builder = new PromptBuilder(600);
+        Memory memory = new Memory("2 млн", null, null, null, "", "Пользователь: привет.");
+
+        String prompt = builder.buildDelta(memory, List.of("country", "purpose"), "country", "PROVIDE_INFO", "Германия");
+
+        assertEquals("""
+                Контекст (READ-ONLY):
+                memory={"budget":"2 млн","country":null,"purpose":null,"body_type":null,"summary":""}
+                missingFields=["country","purpose"]
+                pendingField=country
+                intent=PROVIDE_INFO
+
+                Сообщение пользователя:
+                Германия
+                """, prompt);
+    }
+
+    @Test
+    void fullPromptMatchesGoldenOutput() {
+        PromptBuilder builder = new PromptBuilder(600);
+        Memory memory = new Memory("2 млн", "Германия", null, null, "ищет \"семейный\" авто", "Пользователь: привет.");
+        List<ChatMessage> history = List.of(
+                new ChatMessage("bot", "Какой бюджет?", Instant.EPOCH, false),
+                new ChatMessage("user", "2 млн", Instant.EPOCH, true)
+        );
+
+        String prompt = builder.build("Ты помощник.", memory, List.of("purpose", "body_type"), null, null, history, "Что посоветуете?");
+
+        assertEquals("""
+                SYSTEM:
+                Ты помощник.
+
+                Контекст (READ-ONLY):
+                memory={"budget":"2 млн","country":"Германия","purpose":null,"body_type":null,"summary":"ищет \\"семейный\\" авто"}
+                missingFields=["purpose","body_type"]
+                pendingField=null
+                intent=null
+                earlierTurns="Пользователь: привет."
+                historyWindow=[{"author":"bot","text":"Какой бюджет?"},{"author":"user","text":"2 млн"}]
+
+                Сообщение пользователя:
+                Что посоветуете?
+                """, prompt);
+    }
+
+    private static ChatMessage message(String text) {
+        return new ChatMessage("user", text, Instant.EPOCH, true);
+    }
+}
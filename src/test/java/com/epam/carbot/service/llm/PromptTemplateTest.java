@@ -0,0 +1,38 @@
+package com.epam.carbot.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PromptTemplateTest {
+
+    private enum Slot { GREETING, NAME, CITY }
+
+    @Test
+    void rendersSlotsInPlaceOfPlaceholders() {
+        PromptTemplate<Slot> template = PromptTemplate.compile("{{greeting}}, {{name}}! Город: {{city}}.", Slot.class);
+
+        String first = template.render((slot, out) -> out.append(slot.name().toLowerCase()));
+        String second = template.render((slot, out) -> out.append(slot == Slot.NAME ? "Анна" : "-"));
+
+        assertEquals("greeting, name! Город: city.", first);
+        assertEquals("-, Анна! Город: -.", second);
+    }
+
+    @Test
+    void boundSlotBecomesPartOfTheLiterals() {
+        PromptTemplate<Slot> template = PromptTemplate.compile("{{greeting}}, {{name}}! {{greeting}}", Slot.class)
+                .bind(Slot.GREETING, "Привет {{city}}");
+
+        String rendered = template.render((slot, out) -> out.append('<').append(slot).append('>'));
+
+        assertEquals("Привет {{city}}, <NAME>! Привет {{city}}", rendered);
+    }
+
+    @Test
+    void rejectsUnknownAndUnclosedSlots() {
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("{{weather}}", Slot.class));
+        assertThrows(IllegalArgumentException.class, () -> PromptTemplate.compile("{{name", Slot.class));
+    }
+}
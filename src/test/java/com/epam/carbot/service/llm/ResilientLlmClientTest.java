@@ -0,0 +1,167 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilientLlmClientTest {
+
+    private static final GenerateRequest REQUEST = new GenerateRequest("prompt", "incognito", null);
+
+    @Test
+    void retriesTransientFailuresUntilSuccess() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new LlmServiceException("down", null);
+            }
+            return new GenerateResponse(true, "ok", "incognito", null);
+        }, 3, Duration.ofMillis(1), Duration.ofMillis(2), 0.2, false, 1);
+
+        assertEquals("ok", client.generate(REQUEST).text());
+        assertEquals(2, client.retryCount());
+    }
+
+    @Test
+    void leavesBusyToThePoolAndAdmissionQueue() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            calls.incrementAndGet();
+            throw new LlmBusyException("busy");
+        }, 3, Duration.ofMillis(1), Duration.ofMillis(2), 0.2, false, 1);
+
+        assertThrows(LlmBusyException.class, () -> client.generate(REQUEST));
+        assertEquals(1, calls.get());
+        assertEquals(0, client.retryCount());
+    }
+
+    @Test
+    void doesNotRetryInvalidRequests() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            calls.incrementAndGet();
+            throw new LlmInvalidRequestException("invalid");
+        }, 3, Duration.ofMillis(1), Duration.ofMillis(2), 0.2, false, 1);
+
+        assertThrows(LlmInvalidRequestException.class, () -> client.generate(REQUEST));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsSpent() {
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            throw new LlmServiceException("down", null);
+        }, 100, Duration.ofMillis(1), Duration.ofMillis(1), 0.0, false, 1);
+
+        assertThrows(LlmServiceException.class, () -> client.generate(REQUEST));
+        assertEquals(10, client.retryCount());
+        assertEquals(1, client.budgetExhaustedCount());
+    }
+
+    @Test
+    void hedgesSlowCallPastP95() {
+        AtomicInteger calls = new AtomicInteger();
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            int call = calls.incrementAndGet();
+            if (call == 17) {
+                sleep(2_000);
+                return new GenerateResponse(true, "slow", "incognito", null);
+            }
+            return new GenerateResponse(true, "fast", "incognito", null);
+        }, 1, Duration.ofMillis(1), Duration.ofMillis(1), 1.0, true, 16);
+
+        for (int i = 0; i < 16; i++) {
+            client.generate(REQUEST);
+        }
+
+        assertEquals("fast", client.generate(REQUEST).text());
+        assertEquals(1, client.hedgeCount());
+        assertEquals(1, client.hedgeWinCount());
+    }
+
+    @Test
+    void hedgesStreamWithoutFirstChunkAndCancelsTheLoser() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        ResilientLlmClient client = new ResilientLlmClient(request -> {
+            if (calls.incrementAndGet() == 17) {
+                slowInterrupted.set(!sleep(2_000));
+                return new GenerateResponse(true, "slow", "incognito", null);
+            }
+            return new GenerateResponse(true, "fast", "incognito", null);
+        }, 1, Duration.ofMillis(1), Duration.ofMillis(1), 1.0, true, 16);
+
+        for (int i = 0; i < 16; i++) {
+            client.generateStream(REQUEST, chunk -> {
+            });
+        }
+
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        assertEquals("fast", client.generateStream(REQUEST, chunks::add).text());
+        assertEquals(List.of("fast"), chunks);
+        assertEquals(1, client.hedgeCount());
+        assertEquals(1, client.hedgeWinCount());
+
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (!slowInterrupted.get() && System.currentTimeMillis() < deadline) {
+            sleep(5);
+        }
+        assertTrue(slowInterrupted.get());
+        client.close();
+    }
+
+    @Test
+    void hedgeLoserLeavesItsBackendHealthyAndIsNotRetried() {
+        LlmBackendPool pool = new LlmBackendPool(List.of(
+                new LlmBackendPool.Backend("http://sidecar-1", RestClient.create("http://sidecar-1")),
+                new LlmBackendPool.Backend("http://sidecar-2", RestClient.create("http://sidecar-2"))
+        ), 1, Duration.ofHours(1), "/health");
+        AtomicInteger calls = new AtomicInteger();
+        ResilientLlmClient client = new ResilientLlmClient(request -> pool.execute(restClient -> {
+            if (calls.incrementAndGet() == 17 && !sleep(2_000)) {
+                // так транспорт возвращает прерванный HTTP-вызов
+                throw new LlmServiceException("LLM API error", new IOException("Request was interrupted"));
+            }
+            return new GenerateResponse(true, "fast", "incognito", null);
+        }), 3, Duration.ofMillis(1), Duration.ofMillis(1), 1.0, true, 16);
+
+        for (int i = 0; i < 16; i++) {
+            client.generate(REQUEST);
+        }
+        assertEquals("fast", client.generate(REQUEST).text());
+
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (pool.backends().stream().anyMatch(backend -> backend.outstanding() > 0) && System.currentTimeMillis() < deadline) {
+            sleep(5);
+        }
+        assertEquals(1, client.hedgeWinCount());
+        assertTrue(pool.backends().stream().allMatch(LlmBackendPool.Backend::healthy));
+        assertEquals(0, client.retryCount());
+        assertEquals(18, calls.get());
+        client.close();
+        pool.close();
+    }
+
+    /** Returns {@code false} if the sleep was interrupted. */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.epam.carbot.service.llm;
+
+import com.epam.carbot.dto.generate.GenerateRequest;
+import com.epam.carbot.dto.generate.GenerateResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SingleFlightLlmClientTest {
+
+    private static final GenerateRequest REQUEST = new GenerateRequest("prompt", "incognito", null);
+    private static final GenerateResponse OK = new GenerateResponse(true, "{\"reply\":\"hi\"}", "incognito", null);
+
+    @Test
+    void sharesOneUpstreamCallBetweenConcurrentIdenticalRequests() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlightLlmClient client = new SingleFlightLlmClient(new LlmClient() {
+            @Override
+            public GenerateResponse generate(GenerateRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+                calls.incrementAndGet();
+                onChunk.accept("{\"reply\":");
+                entered.countDown();
+                await(release);
+                onChunk.accept("\"hi\"}");
+                return OK;
+            }
+        });
+
+        StringBuilder leaderText = new StringBuilder();
+        CompletableFuture<GenerateResponse> leader = CompletableFuture.supplyAsync(
+                () -> client.generateStream(REQUEST, leaderText::append), runnable -> Thread.ofVirtual().start(runnable));
+        entered.await(1, TimeUnit.SECONDS);
+
+        StringBuilder followerText = new StringBuilder();
+        CompletableFuture<GenerateResponse> follower = CompletableFuture.supplyAsync(
+                () -> client.generateStream(REQUEST, followerText::append), runnable -> Thread.ofVirtual().start(runnable));
+        while (client.collapsedCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertSame(OK, leader.get(1, TimeUnit.SECONDS));
+        assertSame(OK, follower.get(1, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1, client.collapsedCount());
+        assertEquals(OK.text(), leaderText.toString());
+        assertEquals(OK.text(), followerText.toString());
+        assertEquals(0, client.inFlightCount());
+    }
+
+    @Test
+    void doesNotShareRequestsBoundToASidecarChat() {
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlightLlmClient client = new SingleFlightLlmClient(request -> {
+            calls.incrementAndGet();
+            return OK;
+        });
+        GenerateRequest bound = new GenerateRequest("prompt", "continue", "https://chat/1");
+
+        client.generate(bound);
+        client.generate(bound);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, client.collapsedCount());
+    }
+
+    @Test
+    void failingFollowerConsumerDoesNotBreakTheLeader() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlightLlmClient client = new SingleFlightLlmClient(new LlmClient() {
+            @Override
+            public GenerateResponse generate(GenerateRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public GenerateResponse generateStream(GenerateRequest request, Consumer<String> onChunk) {
+                onChunk.accept("{\"reply\":");
+                entered.countDown();
+                await(release);
+                onChunk.accept("\"hi\"}");
+                return OK;
+            }
+        });
+
+        StringBuilder leaderText = new StringBuilder();
+        CompletableFuture<GenerateResponse> leader = CompletableFuture.supplyAsync(
+                () -> client.generateStream(REQUEST, leaderText::append), runnable -> Thread.ofVirtual().start(runnable));
+        entered.await(1, TimeUnit.SECONDS);
+
+        // например, UI ведомого уже отсоединён и его слушатель бросает
+        CompletableFuture<GenerateResponse> follower = CompletableFuture.supplyAsync(
+                () -> client.generateStream(REQUEST, chunk -> {
+                    throw new IllegalStateException("detached");
+                }), runnable -> Thread.ofVirtual().start(runnable));
+        while (client.collapsedCount() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertSame(OK, leader.get(1, TimeUnit.SECONDS));
+        assertSame(OK, follower.get(1, TimeUnit.SECONDS));
+        assertEquals(OK.text(), leaderText.toString());
+        assertEquals(0, client.inFlightCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.epam.carbot.service.memory;
+
+import com.epam.carbot.dto.chat.ChatMessage;
+import com.epam.carbot.service.ChatSessionService;
+import com.epam.carbot.service.llm.PromptBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationCompactorTest {
+
+    private static final String SID = "session-1";
+
+    private final ChatSessionService sessions = new ChatSessionService(100, Duration.ofMinutes(30), Duration.ofHours(1));
+    private final InMemoryMemoryStore memoryStore = new InMemoryMemoryStore(Duration.ofHours(1), Clock.systemUTC());
+
+    @AfterEach
+    void tearDown() {
+        sessions.destroy();
+    }
+
+    @Test
+    void foldsUpToWindowWithHeadroomSoTheNextTurnLeavesNoGap() {
+        PromptBuilder builder = new PromptBuilder(100);
+        ConversationCompactor compactor = new ConversationCompactor(sessions, memoryStore, builder, 1500, 40);
+        // по 10 токенов текста и 8 на обвязку: в 60 токенов бюджета без запаса входят 3 сообщения
+        for (int i = 0; i < 5; i++) {
+            sessions.addUserMessage(SID, "user", "a".repeat(40));
+        }
+
+        compactor.compact(SID);
+
+        assertEquals(2, sessions.digestedSequence(SID));
+        assertEquals(2, memoryStore.get(SID).digest().lines().count());
+
+        sessions.addUserMessage(SID, "user", "a".repeat(40));
+        long end = sessions.historySequence(SID);
+        List<ChatMessage> window = builder.historyWindow(sessions.getRecentHistory(SID, PromptBuilder.HISTORY_SCAN));
+        assertTrue(sessions.digestedSequence(SID) >= end - window.size());
+    }
+
+    @Test
+    void trimsDigestAtLineBoundary() {
+        ConversationCompactor compactor = new ConversationCompactor(sessions, memoryStore, new PromptBuilder(0), 160, 0);
+        for (int i = 1; i <= 10; i++) {
+            sessions.addUserMessage(SID, "user", "Сообщение номер " + i + " с текстом подлиннее.");
+        }
+
+        compactor.compact(SID);
+
+        String digest = memoryStore.get(SID).digest();
+        assertTrue(digest.length() <= 160);
+        assertTrue(digest.lines().allMatch(line -> line.startsWith("Пользователь: ")));
+        assertTrue(digest.endsWith("Сообщение номер 10 с текстом подлиннее."));
+    }
+
+    @Test
+    void skipsAlreadyDigestedMessages() {
+        ConversationCompactor compactor = new ConversationCompactor(sessions, memoryStore, new PromptBuilder(0), 1500, 0);
+        sessions.addUserMessage(SID, "user", "Первое сообщение пользователя.");
+        sessions.addBotMessage(SID, "Первый ответ бота на сообщение.");
+        compactor.compact(SID);
+        compactor.compact(SID);
+
+        assertEquals(2, compactor.foldedMessageCount());
+
+        sessions.addUserMessage(SID, "user", "Второе сообщение пользователя.");
+        compactor.compact(SID);
+
+        assertEquals(3, compactor.foldedMessageCount());
+        assertEquals(List.of(
+                "Пользователь: Первое сообщение пользователя.",
+                "Бот: Первый ответ бота на сообщение.",
+                "Пользователь: Второе сообщение пользователя."
+        ), memoryStore.get(SID).digest().lines().toList());
+    }
+
+    @Test
+    void skipsPassWhenConcurrentTurnAppendsHistory() {
+        PromptBuilder racing = new PromptBuilder(0) {
+            private boolean raced;
+
+            @Override
+            public List<ChatMessage> historyWindow(List<ChatMessage> recentHistory, int reserveTokens) {
+                if (!raced) {
+                    raced = true;
+                    sessions.addUserMessage(SID, "user", "Сообщение параллельного хода.");
+                }
+                return super.historyWindow(recentHistory, reserveTokens);
+            }
+        };
+        ConversationCompactor compactor = new ConversationCompactor(sessions, memoryStore, racing, 1500, 0);
+        sessions.addUserMessage(SID, "user", "Первое сообщение пользователя.");
+
+        compactor.compact(SID);
+
+        assertEquals(0, sessions.digestedSequence(SID));
+        assertNull(memoryStore.get(SID));
+
+        compactor.compact(SID);
+
+        assertEquals(2, sessions.digestedSequence(SID));
+        assertEquals(2, compactor.foldedMessageCount());
+    }
+}
@@ -36,6 +36,60 @@ class InMemoryMemoryStoreTest {
         assertNull(store.get("session-1"));
     }
 
+    @Test
+    void sweepRemovesExpiredEntriesWithoutReads() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        InMemoryMemoryStore store = new InMemoryMemoryStore(Duration.ofMinutes(5), clock);
+
+        store.put("session-1", new Memory("10000", "Germany", null, null, ""));
+        store.put("session-2", new Memory("20000", "Poland", null, null, ""));
+        clock.setInstant(Instant.parse("2026-01-01T00:06:00Z"));
+        store.put("session-3", new Memory("30000", "France", null, null, ""));
+
+        store.sweepExpired();
+
+        assertEquals(1, store.size());
+        assertEquals(2, store.expiredCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesBeyondCapacity() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        InMemoryMemoryStore store = new InMemoryMemoryStore(Duration.ofHours(24), 2, null, clock);
+
+        store.put("session-1", new Memory("10000", "Germany", null, null, ""));
+        clock.setInstant(Instant.parse("2026-01-01T00:01:00Z"));
+        store.put("session-2", new Memory("20000", "Poland", null, null, ""));
+        clock.setInstant(Instant.parse("2026-01-01T00:02:00Z"));
+        store.get("session-1");
+        store.put("session-3", new Memory("30000", "France", null, null, ""));
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.evictedCount());
+        assertNull(store.get("session-2"));
+        assertEquals("10000", store.get("session-1").budget());
+    }
+
+    @Test
+    void computeUpdatesCurrentValueAtomically() throws Exception {
+        InMemoryMemoryStore store = new InMemoryMemoryStore(Duration.ofHours(24), Clock.systemUTC());
+        store.put("session-1", new Memory(null, null, null, null, ""));
+
+        Thread[] writers = new Thread[8];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = Thread.ofVirtual().start(() -> {
+                for (int j = 0; j < 100; j++) {
+                    store.compute("session-1", m -> new Memory(null, null, null, null, m.summary() + "x"));
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(800, store.get("session-1").summary().length());
+    }
+
     private static final class MutableClock extends Clock {
         private Instant instant;
 
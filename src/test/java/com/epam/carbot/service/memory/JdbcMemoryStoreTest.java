@@ -0,0 +1,167 @@
+package com.epam.carbot.service.memory;
+
+import com.epam.carbot.domain.Memory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JdbcMemoryStoreTest {
+
+    private final DriverManagerDataSource dataSource =
+            new DriverManagerDataSource("jdbc:h2:mem:memory-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    private final CountingJdbcTemplate jdbc = new CountingJdbcTemplate(dataSource);
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    private final List<JdbcMemoryStore> stores = new ArrayList<>();
+
+    JdbcMemoryStoreTest() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(JdbcMemoryStore::destroy);
+        jdbc.execute("SHUTDOWN");
+    }
+
+    @Test
+    void readsFlushedMemoryBackAfterRestart() {
+        JdbcMemoryStore store = store(100);
+        store.put("session-1", new Memory("2 млн", "Германия", "семья", "кроссовер", "ищет кроссовер"));
+        store.flush();
+
+        Memory loaded = store(100).get("session-1");
+
+        assertEquals(new Memory("2 млн", "Германия", "семья", "кроссовер", "ищет кроссовер"), loaded);
+    }
+
+    @Test
+    void ignoresRowsOlderThanTtl() {
+        JdbcMemoryStore store = store(100);
+        store.put("session-1", new Memory("2 млн", null, null, null, ""));
+        store.flush();
+
+        clock.setInstant(Instant.parse("2026-01-02T00:00:01Z"));
+
+        assertNull(store.get("session-1"));
+        assertNull(store(100).get("session-1"));
+    }
+
+    @Test
+    void flushesPendingWritesInBatches() {
+        JdbcMemoryStore store = store(2);
+        for (int i = 0; i < 5; i++) {
+            store.put("session-" + i, new Memory(i + " млн", null, null, null, ""));
+        }
+        // повторная запись той же сессии схлопывается до сброса
+        store.put("session-0", new Memory("10 млн", null, null, null, ""));
+
+        store.flush();
+
+        assertEquals(3, jdbc.batches);
+        assertEquals(0, store.pendingWriteCount());
+        assertEquals(5, jdbc.queryForObject("SELECT COUNT(*) FROM chat_memory", Integer.class));
+        assertEquals("10 млн", store(2).get("session-0").budget());
+    }
+
+    @Test
+    void persistsDigest() {
+        JdbcMemoryStore store = store(100);
+        store.compute("session-1", current -> new Memory("2 млн", null, null, null, "").withDigest("Пользователь: привет."));
+        store.flush();
+
+        assertEquals("Пользователь: привет.", store(100).get("session-1").digest());
+    }
+
+    @Test
+    void coldReadDoesNotOverwriteConcurrentUpdate() {
+        JdbcMemoryStore writer = store(100);
+        writer.put("session-1", new Memory("2 млн", null, null, null, ""));
+        writer.flush();
+
+        JdbcMemoryStore store = store(100);
+        // сжатие истории успевает записать дайджест, пока холодное чтение ждёт базу
+        jdbc.afterQuery = () -> store.compute("session-1", current -> current.withDigest("Пользователь: привет."));
+
+        store.get("session-1");
+        store.flush();
+
+        assertEquals("Пользователь: привет.", store.get("session-1").digest());
+        assertEquals("Пользователь: привет.", store(100).get("session-1").digest());
+    }
+
+    private JdbcMemoryStore store(int batchSize) {
+        // фоновый сброс не мешает: тесты вызывают flush() сами
+        JdbcMemoryStore store = new JdbcMemoryStore(jdbc, Duration.ofHours(24), 1000, Duration.ofHours(1),
+                Duration.ofHours(1), batchSize, clock);
+        stores.add(store);
+        return store;
+    }
+
+    private static final class CountingJdbcTemplate extends JdbcTemplate {
+        private int batches;
+        private Runnable afterQuery;
+
+        private CountingJdbcTemplate(DriverManagerDataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            List<T> rows = super.query(sql, rowMapper, args);
+            Runnable hook = afterQuery;
+            afterQuery = null;
+            if (hook != null) {
+                hook.run();
+            }
+            return rows;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            batches++;
+            return super.batchUpdate(sql, batchArgs);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void setInstant(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
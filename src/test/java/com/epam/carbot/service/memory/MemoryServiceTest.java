@@ -22,4 +22,15 @@ class MemoryServiceTest {
         assertEquals("crossover", merged.body_type());
         assertEquals("new summary", merged.summary());
     }
+
+    @Test
+    void mergeKeepsDigestTheModelDoesNotSee() {
+        Memory oldMemory = new Memory("10000 usd", null, null, null, "", "Пользователь: нужен семейный автомобиль.");
+        Memory incoming = new Memory(null, "Germany", null, null, "summary");
+
+        Memory merged = memoryService.merge(oldMemory, incoming);
+
+        assertEquals("Germany", merged.country());
+        assertEquals("Пользователь: нужен семейный автомобиль.", merged.digest());
+    }
 }
@@ -0,0 +1,90 @@
+package com.epam.carbot.service.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotExtractorTest {
+
+    private static final List<String> ALL_MISSING = List.of("budget", "country", "purpose", "body_type");
+
+    private final SlotExtractor extractor = new SlotExtractor();
+
+    @Test
+    void extractsBudgetWithMultiplierAndCurrency() {
+        SlotExtractor.SlotValue slot = only(extractor.extractAll(ALL_MISSING, "до 2 млн руб"));
+
+        assertEquals("2 млн руб", slot.value());
+        assertTrue(slot.confidence() >= 0.9);
+    }
+
+    @Test
+    void extractsCountryFromInflectedForm() {
+        SlotExtractor.SlotValue slot = only(extractor.extractAll(ALL_MISSING, "в Германии"));
+
+        assertEquals("Германия", slot.value());
+        assertEquals(0.95, slot.confidence());
+    }
+
+    @Test
+    void extractsBodyTypeButLeavesLongAnswersToTheModel() {
+        assertEquals("кроссовер", only(extractor.extractAll(ALL_MISSING, "Кроссовер")).value());
+
+        assertTrue(extractor.extractAll(ALL_MISSING, "ну седан наверное, но жена хочет что-то повыше").isEmpty());
+    }
+
+    @Test
+    void leavesQuestionsAndFieldsNotAskedToTheModel() {
+        assertTrue(extractor.extractAll(ALL_MISSING, "а где дешевле, в Германии?").isEmpty());
+        assertTrue(extractor.extractAll(List.of("purpose"), "в Германии").isEmpty());
+        assertTrue(extractor.extractAll(ALL_MISSING, "мне 30 лет").isEmpty());
+    }
+
+    @Test
+    void yearAndBareNumbersAreNotTrustedAsBudget() {
+        assertTrue(extractor.extractAll(ALL_MISSING, "2020").isEmpty());
+        assertTrue(extractor.extractAll(ALL_MISSING, "как у Camry 2020 года").isEmpty());
+
+        assertTrue(only(extractor.extractAll(ALL_MISSING, "30")).confidence() < 0.75);
+        assertTrue(only(extractor.extractAll(ALL_MISSING, "5000")).confidence() < 0.75);
+        assertTrue(only(extractor.extractAll(ALL_MISSING, "1500000")).confidence() >= 0.75);
+    }
+
+    @Test
+    void thousandSuffixNeedsWordBoundary() {
+        assertEquals("900 к", only(extractor.extractAll(ALL_MISSING, "900 к")).value());
+
+        List<SlotExtractor.SlotValue> slots = extractor.extractAll(ALL_MISSING, "900 кроссовер");
+        assertEquals(List.of("budget", "body_type"), slots.stream().map(SlotExtractor.SlotValue::field).toList());
+        assertEquals("900", slots.get(0).value());
+        assertEquals("кроссовер", slots.get(1).value());
+    }
+
+    @Test
+    void fillsEveryMissingFieldFromOneMessage() {
+        List<SlotExtractor.SlotValue> slots = extractor.extractAll(List.of("budget", "country", "purpose"), "2 млн руб, Москва");
+
+        assertEquals(List.of("budget", "country"), slots.stream().map(SlotExtractor.SlotValue::field).toList());
+        assertEquals("2 млн руб", slots.get(0).value());
+        assertEquals("Москва", slots.get(1).value());
+    }
+
+    @Test
+    void leavesMessageWithUnexplainedTextToTheModel() {
+        assertTrue(extractor.extractAll(ALL_MISSING, "2 млн, для семьи").isEmpty());
+        // бюджет уже известен — число в сообщении объяснить нечем
+        assertTrue(extractor.extractAll(List.of("country"), "Москва, 3 млн").isEmpty());
+        // две разные страны — пусть разбирается модель
+        assertTrue(extractor.extractAll(ALL_MISSING, "Германия или Польша").isEmpty());
+        assertFalse(extractor.extractAll(ALL_MISSING, "до 2 млн").isEmpty());
+    }
+
+    private static SlotExtractor.SlotValue only(List<SlotExtractor.SlotValue> slots) {
+        assertEquals(1, slots.size());
+        return slots.get(0);
+    }
+}